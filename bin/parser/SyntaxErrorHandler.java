@@ -125,6 +125,9 @@ public class SyntaxErrorHandler {
         SyntaxError error = new SyntaxError(type, message, line, column, suggestion, context);
         errors.add(error);
         errorCount++;
+        if (ParseTrace.ENABLED) {
+            ParseTrace.record(ParseTrace.Event.ERROR, type, line, column);
+        }
     
         if (immediateLogging) {
             System.err.println(error);
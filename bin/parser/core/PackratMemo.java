@@ -0,0 +1,120 @@
+package parser.core;
+
+import java.util.Arrays;
+
+/**
+ * Packrat memo of the nonterminals the automaton has already parsed, keyed by
+ * nonterminal id and start token index. An entry records only whether the
+ * nonterminal was recognized there and, if so, the token index it ended at and
+ * the production that derived it. That is enough to skip the nonterminal, but
+ * no parse subtree can be rebuilt from the memo: children are not recorded
+ * with it, and frames whose result depended on the stack are not memoized.
+ *
+ * Keys and entries are packed into longs in two parallel arrays with linear
+ * probing, so looking up or recording a result does not allocate.
+ */
+class PackratMemo {
+    /** Returned by {@link #lookup} when nothing is recorded. */
+    static final long MISSING = Long.MIN_VALUE;
+    /** Entry of a nonterminal that cannot be parsed at its start token. */
+    static final long FAILED = -1L;
+
+    private static final long EMPTY_KEY = -1L;
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private long[] keys;
+    private long[] entries;
+    private int mask;
+    private int size;
+
+    PackratMemo() {
+        allocate(INITIAL_CAPACITY);
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        entries = new long[capacity];
+        Arrays.fill(keys, EMPTY_KEY);
+        mask = capacity - 1;
+        size = 0;
+    }
+
+    void clear() {
+        Arrays.fill(keys, EMPTY_KEY);
+        size = 0;
+    }
+
+    /**
+     * Returns the entry recorded for a nonterminal at a token index.
+     *
+     * @return The entry, {@link #FAILED}, or {@link #MISSING} if nothing is recorded.
+     */
+    long lookup(int state, int tokenIndex) {
+        long key = key(state, tokenIndex);
+        for (int slot = slot(key); ; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                return entries[slot];
+            }
+            if (keys[slot] == EMPTY_KEY) {
+                return MISSING;
+            }
+        }
+    }
+
+    /**
+     * Records that a nonterminal was parsed from one token index to another by a production.
+     */
+    void recordSuccess(int state, int start, int end, int production) {
+        record(key(state, start), ((long) end << 32) | (production & 0xFFFFFFFFL));
+    }
+
+    /**
+     * Records that a nonterminal cannot be parsed at a token index.
+     */
+    void recordFailure(int state, int start) {
+        record(key(state, start), FAILED);
+    }
+
+    static boolean succeeded(long entry) {
+        return entry >= 0;
+    }
+
+    static int end(long entry) {
+        return (int) (entry >>> 32);
+    }
+
+    private void record(long key, long entry) {
+        if ((size + 1) * 2 > keys.length) {
+            grow();
+        }
+        int slot = slot(key);
+        while (keys[slot] != EMPTY_KEY && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        if (keys[slot] == EMPTY_KEY) {
+            keys[slot] = key;
+            size++;
+        }
+        entries[slot] = entry;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        long[] oldEntries = entries;
+        allocate(oldKeys.length * 2);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY_KEY) {
+                record(oldKeys[i], oldEntries[i]);
+            }
+        }
+    }
+
+    private static long key(int state, int tokenIndex) {
+        return ((long) state << 32) | tokenIndex;
+    }
+
+    private int slot(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+}
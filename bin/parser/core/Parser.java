@@ -1,26 +1,28 @@
 package parser.core;
 
 import lexer.Token;
+import lexer.TokenStream;
 import parser.grammar.NonTerminal;
+import util.ParseTrace;
 import util.SyntaxErrorHandler;
 
 import java.util.List;
 
 public class Parser {
-    private final List<Token> tokens;
+    private final TokenStream tokens;
     private final ParserAutomaton automaton;
     private final SyntaxErrorHandler errorHandler;
     private ParseTree parseTree;
     private int current = 0;
 
-    public Parser(List<Token> tokens) {
+    public Parser(TokenStream tokens) {
         this.tokens = tokens;
         this.automaton = new ParserAutomaton();
         this.errorHandler = new SyntaxErrorHandler(this);
     }
 
     /**
-     * Parses the given list of tokens into a parse tree.
+     * Parses the given stream of tokens into a parse tree.
      *
      * @return The parsed tree structure.
      */
@@ -72,7 +74,10 @@ public class Parser {
                 "Check the overall syntax structure"
             );
         }
-    
+
+        if (ParseTrace.ENABLED && errorHandler.hasErrors()) {
+            ParseTrace.dump(System.err);
+        }
         return parseTree;
     }
 
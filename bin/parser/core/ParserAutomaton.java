@@ -1,256 +1,308 @@
 package parser.core;
 
-import lexer.Token;
-import parser.grammar.GrammarRule;
-import parser.grammar.NonTerminal;
-import java.util.*;
+import java.util.Arrays;
 
+import lexer.TokenStream;
+import lexer.TokenType;
+import parser.grammar.CompiledGrammar;
+import parser.grammar.NonTerminal;
+import parser.grammar.PredictiveTable;
+import util.ParseTrace;
+import util.ParseTrace.Event;
+
+/**
+ * Table-driven top-down parser over the int-coded productions of
+ * {@link CompiledGrammar}. Each frame on the stacks is a nonterminal id, the
+ * production chosen for it, the symbol reached in that production and the
+ * token index it started at. Productions are chosen from the LL(1) table in
+ * {@link PredictiveTable} by the token the frame starts at; only when the table
+ * has a conflict for that token are the predicted productions tried one after
+ * another, going back to the start token each time.
+ *
+ * The terminal id of every token is looked up once in {@link #setTokens}, so
+ * matching a terminal compares two ints. Optional elements are nonterminals of
+ * their own whose empty production is tried when their content fails.
+ *
+ * Every frame that completes or fails is recorded in a {@link PackratMemo}, so
+ * a nonterminal reached again at the same token after backtracking is passed or
+ * failed at once instead of being parsed again. A frame whose subtree was
+ * refused a nonterminal because a frame below it was already expanding that
+ * nonterminal at the same token has a result that depends on the stack, so it
+ * is not recorded; the refusal is passed down to each frame above the guarding
+ * one as they are popped.
+ */
 public class ParserAutomaton {
-    private final Stack<NonTerminal> stateStack;
-    private final Stack<Integer> productionIndexStack;
-    private final Stack<Integer> elementIndexStack;
-    private final Set<String> expandedStates;
-    private final Set<String> attemptedProductions;
-    private List<Token> tokens;
+    private static final int NO_PRODUCTION = PredictiveTable.NO_PRODUCTION;
+    private static final int STATE_COUNT = CompiledGrammar.nonTerminalCount();
+    // Optional elements take a frame of their own, so this allows about 50 nested nonterminals
+    private static final int MAX_STACK_DEPTH = 100;
+    private static final int NO_GUARD = MAX_STACK_DEPTH;
+
+    // One frame per index: nonterminal id, production, symbol reached and start token
+    private final int[] stateStack = new int[MAX_STACK_DEPTH];
+    private final int[] productionIndexStack = new int[MAX_STACK_DEPTH];
+    private final int[] elementIndexStack = new int[MAX_STACK_DEPTH];
+    private final int[] startIndexStack = new int[MAX_STACK_DEPTH];
+    // Lowest frame whose expansion refused a nonterminal in the subtree of each frame, or NO_GUARD
+    private final int[] guardStack = new int[MAX_STACK_DEPTH];
+    private int depth;
+
+    // Number of frames of each nonterminal on the stack, so most cycle checks need no scan
+    private final int[] liveFrames = new int[STATE_COUNT];
+    private final PackratMemo memo;
+    private TokenStream tokens;
+    // Terminal id of each token, followed by END
+    private int[] tokenIds = { PredictiveTable.END };
     private int currentTokenIndex;
-    private static final int MAX_STACK_DEPTH = 50;
-    private boolean debug = true;
 
     public ParserAutomaton() {
-        this.stateStack = new Stack<>();
-        this.productionIndexStack = new Stack<>();
-        this.elementIndexStack = new Stack<>();
-        this.expandedStates = new HashSet<>();
-        this.attemptedProductions = new HashSet<>();
+        this.memo = new PackratMemo();
         this.currentTokenIndex = 0;
     }
 
-    public void setTokens(List<Token> tokens) {
+    public void setTokens(TokenStream tokens) {
         this.tokens = tokens;
         this.currentTokenIndex = 0;
+        this.depth = 0;
+        Arrays.fill(liveFrames, 0);
+        this.tokenIds = new int[tokens.size() + 1];
+        for (int i = 0; i < tokens.size(); i++) {
+            tokenIds[i] = tokens.type(i) == TokenType.EOF
+                    ? PredictiveTable.END
+                    : PredictiveTable.terminalId(tokens.lexeme(i));
+        }
+        tokenIds[tokens.size()] = PredictiveTable.END;
+        memo.clear();
     }
 
     public void reset() {
-        stateStack.clear();
-        productionIndexStack.clear();
-        elementIndexStack.clear();
-        expandedStates.clear();
-        attemptedProductions.clear();
+        while (depth > 0) {
+            popState();
+        }
+        memo.clear();
         currentTokenIndex = 0;
     }
 
-    private void debugPrint(String message) {
-        if (debug) {
-            System.out.println("DEBUG: " + message);
-            System.out.println("Current Token: " + (getCurrentToken() != null ? getCurrentToken().getLexeme() : "null"));
-            System.out.println("Stack: " + stateStack);
-            System.out.println("Productions: " + productionIndexStack);
-            System.out.println("Elements: " + elementIndexStack);
-            System.out.println("---");
+    /**
+     * Records an event about the frame on top of the stack.
+     */
+    private void trace(Event event, int first, int second) {
+        if (ParseTrace.ENABLED) {
+            ParseTrace.record(event, getCurrentState(), first, second);
         }
     }
 
     public void pushState(NonTerminal state) {
-        if (stateStack.size() >= MAX_STACK_DEPTH) {
-            throw new RuntimeException("Maximum parser stack depth exceeded");
+        if (!isExpanded(state.ordinal(), currentTokenIndex)) {
+            push(state.ordinal());
         }
+    }
 
-        String stateKey = getStateKey(state);
-        debugPrint("Attempting to push state: " + state + ", key: " + stateKey);
-        
-        if (expandedStates.contains(stateKey)) {
-            debugPrint("State already expanded: " + state);
-            return;
+    private void push(int state) {
+        if (depth >= MAX_STACK_DEPTH) {
+            throw new RuntimeException("Maximum parser stack depth exceeded");
         }
-
-        expandedStates.add(stateKey);
-        stateStack.push(state);
-        productionIndexStack.push(0);
-        elementIndexStack.push(0);
-        System.out.println("Pushed state: " + state);
+        liveFrames[state]++;
+        stateStack[depth] = state;
+        productionIndexStack[depth] = predictProduction(state, tokenIds[currentTokenIndex]);
+        elementIndexStack[depth] = 0;
+        startIndexStack[depth] = currentTokenIndex;
+        guardStack[depth] = NO_GUARD;
+        depth++;
+        trace(Event.PUSH, currentTokenIndex, productionIndexStack[depth - 1]);
     }
 
-    private String getStateKey(NonTerminal state) {
-        return state.name() + "@" + currentTokenIndex + "@" + getStackContext();
+    // A nonterminal entered again at the same token without consuming anything is a cycle
+    private boolean isExpanded(int state, int tokenIndex) {
+        return expandingFrame(state, tokenIndex) != NO_GUARD;
     }
 
-    private String getStackContext() {
-        return String.join("->", stateStack.stream()
-            .map(NonTerminal::name)
-            .toList());
+    /**
+     * Returns the production the table predicts for a lookahead, or the first predicted one on a conflict.
+     */
+    private int predictProduction(int state, int lookahead) {
+        int production = PredictiveTable.lookup(state, lookahead);
+        if (production == PredictiveTable.CONFLICT) {
+            return nextPredictedProduction(state, 0, lookahead);
+        }
+        return production;
     }
 
-    private Token getCurrentToken() {
-        return currentTokenIndex < tokens.size() ? tokens.get(currentTokenIndex) : null;
+    private int nextPredictedProduction(int state, int from, int lookahead) {
+        int count = CompiledGrammar.productions(state).length;
+        for (int production = from; production < count; production++) {
+            if (PredictiveTable.predicts(state, production, lookahead)) {
+                return production;
+            }
+        }
+        return NO_PRODUCTION;
     }
 
     public boolean processTokens() {
-        while (!stateStack.isEmpty() && currentTokenIndex < tokens.size()) {
-            debugPrint("Processing tokens, current index: " + currentTokenIndex);
-            Token currentToken = getCurrentToken();
-            if (currentToken != null) {
-                debugPrint("Current token: " + currentToken.getLexeme());
-            }
-
+        while (depth > 0) {
             if (!processCurrentState()) {
-                debugPrint("Failed to process current state");
+                trace(Event.FAIL, currentTokenIndex, elementIndexStack[depth - 1]);
                 if (!backtrack()) {
-                    debugPrint("Backtracking failed");
                     return false;
                 }
             }
         }
-        return stateStack.isEmpty() && currentTokenIndex == tokens.size();
+        // The start symbol only completes once the lookahead is the end of the input
+        return true;
     }
 
     private boolean processCurrentState() {
-        NonTerminal currentState = stateStack.peek();
-        int productionIndex = productionIndexStack.peek();
-        int elementIndex = elementIndexStack.peek();
+        int top = depth - 1;
+        int state = stateStack[top];
+        int productionIndex = productionIndexStack[top];
+        int elementIndex = elementIndexStack[top];
 
-        debugPrint("Processing state: " + currentState + 
-                  ", production: " + productionIndex + 
-                  ", element: " + elementIndex);
-
-        List<List<Object>> productions = GrammarRule.getProductions(currentState);
-        Token currentToken = getCurrentToken();
-
-        // Try to match current token first
-        if (currentToken != null && productionIndex == 0) {
-            int matchingProduction = findProductionMatchingToken(productions, currentToken);
-            if (matchingProduction != -1) {
-                debugPrint("Found matching production: " + matchingProduction);
-                productionIndexStack.pop();
-                productionIndexStack.push(matchingProduction);
-                productionIndex = matchingProduction;
-            }
-        }
-
-        if (productionIndex >= productions.size()) {
-            debugPrint("No more productions to try");
+        if (productionIndex == NO_PRODUCTION) {
             return false;
         }
 
-        List<Object> currentProduction = productions.get(productionIndex);
-        if (elementIndex >= currentProduction.size()) {
-            debugPrint("Completed production");
+        int[] production = CompiledGrammar.productions(state)[productionIndex];
+        if (elementIndex >= production.length) {
+            // Optional elements are followed by whatever follows them in their own production
+            if (!CompiledGrammar.isSynthetic(state)
+                    && !PredictiveTable.follows(state, tokenIds[currentTokenIndex])) {
+                return false;
+            }
+            if (isMemoizable(top)) {
+                memo.recordSuccess(state, startIndexStack[top], currentTokenIndex, productionIndex);
+            }
             popState();
+            advanceElement();
             return true;
         }
 
-        Object currentElement = currentProduction.get(elementIndex);
-        debugPrint("Current element: " + currentElement);
-
-        if (currentElement instanceof NonTerminal) {
-            return handleNonTerminal((NonTerminal) currentElement);
-        } else if (currentElement instanceof String) {
-            return handleTerminal((String) currentElement);
-        } else if (currentElement instanceof Optional<?>) {
-            return handleOptional((Optional<?>) currentElement);
+        int symbol = production[elementIndex];
+        if (CompiledGrammar.isTerminal(symbol)) {
+            return handleTerminal(CompiledGrammar.terminal(symbol));
         }
-
-        return false;
+        return handleNonTerminal(symbol);
     }
 
-    private int findProductionMatchingToken(List<List<Object>> productions, Token token) {
-        for (int i = 0; i < productions.size(); i++) {
-            if (productionCouldMatchToken(productions.get(i), token)) {
-                return i;
-            }
+    private void advanceElement() {
+        if (depth > 0) {
+            elementIndexStack[depth - 1]++;
         }
-        return -1;
     }
 
-    private boolean productionCouldMatchToken(List<Object> production, Token token) {
-        if (production.isEmpty()) {
+    private boolean handleNonTerminal(int state) {
+        long entry = memo.lookup(state, currentTokenIndex);
+        if (PackratMemo.succeeded(entry)) {
+            trace(Event.MEMO, currentTokenIndex, PackratMemo.end(entry));
+            currentTokenIndex = PackratMemo.end(entry);
+            advanceElement();
+            return true;
+        }
+        if (entry != PackratMemo.MISSING) {
             return false;
         }
-        
-        Object firstElement = production.get(0);
-        if (firstElement instanceof String) {
-            return firstElement.equals(token.getLexeme());
-        } else if (firstElement instanceof NonTerminal) {
-            return GrammarRule.couldGenerateToken((NonTerminal) firstElement, token);
+        int expanding = expandingFrame(state, currentTokenIndex);
+        if (expanding != NO_GUARD) {
+            guardBy(expanding);
+            return false;
         }
-        return false;
+        push(state);
+        return true;
     }
 
-    private boolean handleNonTerminal(NonTerminal nonTerm) {
-        debugPrint("Handling NonTerminal: " + nonTerm);
-        String stateKey = getStateKey(nonTerm);
-        
-        if (!expandedStates.contains(stateKey)) {
-            pushState(nonTerm);
-            return true;
+    /**
+     * Returns the frame expanding a nonterminal from a token index, or NO_GUARD
+     * if there is none. Frames start no earlier than the frame below them, so
+     * only the frames on top that start at that token are scanned.
+     */
+    private int expandingFrame(int state, int tokenIndex) {
+        if (liveFrames[state] == 0) {
+            return NO_GUARD;
         }
-        return false;
+        for (int frame = depth - 1; frame >= 0 && startIndexStack[frame] >= tokenIndex; frame--) {
+            if (stateStack[frame] == state && startIndexStack[frame] == tokenIndex) {
+                return frame;
+            }
+        }
+        return NO_GUARD;
+    }
+
+    // Marks the frame on top of the stack as depending on the given frame staying on the stack
+    private void guardBy(int frame) {
+        int top = depth - 1;
+        guardStack[top] = Math.min(guardStack[top], frame);
     }
 
-    private boolean handleTerminal(String terminal) {
-        Token currentToken = getCurrentToken();
-        debugPrint("Handling Terminal: " + terminal + ", Current Token: " + 
-                  (currentToken != null ? currentToken.getLexeme() : "null"));
-        
-        if (currentToken != null && currentToken.getLexeme().equals(terminal)) {
-            debugPrint("Terminal matched");
+    /**
+     * Returns whether the result of a frame holds wherever its nonterminal is
+     * reached at its start token: a refusal by the frame itself is part of its
+     * own left recursion, one by a frame below it is not.
+     */
+    private boolean isMemoizable(int frame) {
+        return guardStack[frame] >= frame;
+    }
+
+    private boolean handleTerminal(int terminal) {
+        if (tokenIds[currentTokenIndex] == terminal && terminal != PredictiveTable.END) {
+            trace(Event.MATCH, currentTokenIndex, elementIndexStack[depth - 1]);
             currentTokenIndex++;
-            elementIndexStack.set(elementIndexStack.size() - 1, 
-                                elementIndexStack.peek() + 1);
+            advanceElement();
             return true;
         }
         return false;
     }
 
-    private boolean handleOptional(Optional<?> optional) {
-        debugPrint("Handling Optional element");
-        if (optional.isPresent()) {
-            Object opt = optional.get();
-            if (opt instanceof NonTerminal) {
-                NonTerminal nonTerm = (NonTerminal) opt;
-                String stateKey = getStateKey(nonTerm);
-                
-                if (!expandedStates.contains(stateKey)) {
-                    pushState(nonTerm);
+    /**
+     * Recovers from a failure of the frame on top of the stack: tries the next
+     * production predicted for its start token, and when there is none drops the
+     * frame, failing the frame below.
+     */
+    private boolean backtrack() {
+        while (depth > 0) {
+            int top = depth - 1;
+            int state = stateStack[top];
+            int currentProdIndex = productionIndexStack[top];
+            int start = startIndexStack[top];
+
+            if (currentProdIndex >= 0) {
+                int next = nextPredictedProduction(state, currentProdIndex + 1, tokenIds[start]);
+                if (next != NO_PRODUCTION) {
+                    trace(Event.RETRY, start, next);
+                    productionIndexStack[top] = next;
+                    elementIndexStack[top] = 0;
+                    currentTokenIndex = start;
+                    return true;
                 }
             }
-        }
-        elementIndexStack.set(elementIndexStack.size() - 1, 
-                            elementIndexStack.peek() + 1);
-        return true;
-    }
 
-    private boolean backtrack() {
-        while (!stateStack.isEmpty()) {
-            int currentProdIndex = productionIndexStack.peek();
-            List<List<Object>> productions = GrammarRule.getProductions(stateStack.peek());
-            
-            if (currentProdIndex + 1 < productions.size()) {
-                productionIndexStack.set(productionIndexStack.size() - 1, currentProdIndex + 1);
-                elementIndexStack.set(elementIndexStack.size() - 1, 0);
-                return true;
+            if (isMemoizable(top)) {
+                memo.recordFailure(state, start);
             }
-            
             popState();
+            currentTokenIndex = start;
         }
         return false;
     }
 
     public void popState() {
-        if (!stateStack.isEmpty()) {
-            NonTerminal top = stateStack.pop();
-            productionIndexStack.pop();
-            elementIndexStack.pop();
-            String stateKey = getStateKey(top);
-            expandedStates.remove(stateKey);
-            System.out.println("Popped state: " + top);
+        if (depth > 0) {
+            trace(Event.POP, currentTokenIndex, productionIndexStack[depth - 1]);
+            depth--;
+            liveFrames[stateStack[depth]]--;
+            // The parent depends on any frame below it that the popped subtree depended on
+            if (depth > 0 && guardStack[depth] < depth) {
+                guardBy(guardStack[depth]);
+            }
         }
     }
 
+    /**
+     * Returns the nonterminal on top of the stack, or for an optional element the nonterminal it belongs to.
+     */
     public NonTerminal getCurrentState() {
-        return stateStack.isEmpty() ? null : stateStack.peek();
+        return depth == 0 ? null : CompiledGrammar.owner(stateStack[depth - 1]);
     }
 
     public boolean isStackEmpty() {
-        return stateStack.isEmpty();
+        return depth == 0;
     }
-}
\ No newline at end of file
+}
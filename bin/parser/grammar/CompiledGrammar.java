@@ -0,0 +1,154 @@
+package parser.grammar;
+
+import java.util.*;
+
+/**
+ * The productions of {@link GrammarRule} compiled into int arrays.
+ *
+ * Every symbol is an int. A nonterminal is its id, which for the constants of
+ * {@link NonTerminal} is their ordinal. A terminal is the bitwise complement of
+ * its terminal id, so it is always negative. Terminal ids are interned from the
+ * lexemes the grammar uses, with {@link #END} for the end of the input and
+ * {@link #OTHER} for any token the grammar never mentions.
+ *
+ * Each optional element becomes a fresh nonterminal with two productions: its
+ * content, then the empty production. Nested sequences inside optionals are
+ * flattened into the content production. These synthetic nonterminals are
+ * numbered after the constants of NonTerminal and remember the nonterminal
+ * whose production they came from.
+ */
+public final class CompiledGrammar {
+    public static final int END = 0;
+    public static final int OTHER = 1;
+
+    private static final NonTerminal[] NON_TERMINALS = NonTerminal.values();
+
+    private static final Map<String, Integer> terminalIds = new HashMap<>();
+    private static final List<String> terminals = new ArrayList<>(List.of("$", "<other>"));
+
+    // Filled while compiling, indexed by nonterminal id
+    private static final List<int[][]> compiledProductions = new ArrayList<>();
+    private static final List<NonTerminal> compiledOwners = new ArrayList<>();
+
+    private static final int[][][] productions;
+    private static final NonTerminal[] owners;
+
+    static {
+        for (NonTerminal nonTerminal : NON_TERMINALS) {
+            compiledProductions.add(null);
+            compiledOwners.add(nonTerminal);
+        }
+        for (NonTerminal nonTerminal : NON_TERMINALS) {
+            List<List<Object>> rules = GrammarRule.getProductions(nonTerminal);
+            int[][] compiled = new int[rules.size()][];
+            for (int p = 0; p < compiled.length; p++) {
+                compiled[p] = compileSequence(nonTerminal, rules.get(p));
+            }
+            compiledProductions.set(nonTerminal.ordinal(), compiled);
+        }
+        productions = compiledProductions.toArray(new int[0][][]);
+        owners = compiledOwners.toArray(new NonTerminal[0]);
+    }
+
+    private CompiledGrammar() {
+    }
+
+    private static int[] compileSequence(NonTerminal owner, List<?> sequence) {
+        int[] symbols = new int[sequence.size()];
+        int length = 0;
+        for (Object element : sequence) {
+            if (element instanceof List<?> nested) {
+                int[] flattened = compileSequence(owner, nested);
+                symbols = Arrays.copyOf(symbols, symbols.length + flattened.length - 1);
+                System.arraycopy(flattened, 0, symbols, length, flattened.length);
+                length += flattened.length;
+            } else {
+                symbols[length++] = compileElement(owner, element);
+            }
+        }
+        return symbols;
+    }
+
+    private static int compileElement(NonTerminal owner, Object element) {
+        if (element instanceof NonTerminal nonTerminal) {
+            return nonTerminal.ordinal();
+        } else if (element instanceof String terminal) {
+            return ~internTerminal(terminal);
+        } else if (element instanceof Optional<?> optional) {
+            int id = compiledProductions.size();
+            compiledProductions.add(null);
+            compiledOwners.add(owner);
+            Object content = optional.get();
+            int[] contentProduction = content instanceof List<?> nested
+                    ? compileSequence(owner, nested)
+                    : new int[] { compileElement(owner, content) };
+            compiledProductions.set(id, new int[][] { contentProduction, new int[0] });
+            return id;
+        }
+        throw new IllegalArgumentException("Unknown grammar element: " + element);
+    }
+
+    private static int internTerminal(String terminal) {
+        Integer id = terminalIds.get(terminal);
+        if (id == null) {
+            id = terminals.size();
+            terminalIds.put(terminal, id);
+            terminals.add(terminal);
+        }
+        return id;
+    }
+
+    /**
+     * Returns the id of a terminal.
+     *
+     * @param lexeme The lexeme of a token.
+     * @return The id of the terminal, or {@link #OTHER} if the grammar does not use it.
+     */
+    public static int terminalId(String lexeme) {
+        return terminalIds.getOrDefault(lexeme, OTHER);
+    }
+
+    public static int terminalCount() {
+        return terminals.size();
+    }
+
+    public static String terminalName(int terminal) {
+        return terminals.get(terminal);
+    }
+
+    /**
+     * Returns the number of nonterminals, synthetic ones included.
+     */
+    public static int nonTerminalCount() {
+        return productions.length;
+    }
+
+    /**
+     * Returns the productions of a nonterminal, each an array of symbols.
+     */
+    public static int[][] productions(int nonTerminal) {
+        return productions[nonTerminal];
+    }
+
+    /**
+     * Returns whether a nonterminal was made for an optional element.
+     */
+    public static boolean isSynthetic(int nonTerminal) {
+        return nonTerminal >= NON_TERMINALS.length;
+    }
+
+    /**
+     * Returns the nonterminal itself, or for a synthetic one the nonterminal whose production it came from.
+     */
+    public static NonTerminal owner(int nonTerminal) {
+        return owners[nonTerminal];
+    }
+
+    public static boolean isTerminal(int symbol) {
+        return symbol < 0;
+    }
+
+    public static int terminal(int symbol) {
+        return ~symbol;
+    }
+}
@@ -550,29 +550,6 @@ public class GrammarRule {
 
     public static boolean couldGenerateToken(NonTerminal nonTerminal, Token token) {
         // Check if this non-terminal could eventually generate the given token
-        if (nonTerminal == NonTerminal.CLASS_MODS) {
-            // Check if token could be generated by ACCESS_MOD
-            return couldGenerateToken(NonTerminal.ACCESS_MOD, token) ||
-                   couldGenerateToken(NonTerminal.NON_ACCESS_MOD, token);
-        }
-        
-        if (nonTerminal == NonTerminal.ACCESS_MOD) {
-            return token.getLexeme().equals("public") || 
-                    token.getLexeme().equals("private") || 
-                    token.getLexeme().equals("protected") || 
-                    token.getLexeme().equals("general");
-        }
-        
-        if (nonTerminal == NonTerminal.NON_ACCESS_MOD) {
-            return token.getLexeme().equals("static") || 
-                    token.getLexeme().equals("final") || 
-                    token.getLexeme().equals("abstract") ||
-                    token.getLexeme().equals("native") ||
-                    token.getLexeme().equals("strictfp") ||
-                    token.getLexeme().equals("transient") ||
-                    token.getLexeme().equals("volatile");
-        }
-        
-        return false;
+        return PredictiveTable.startsWith(nonTerminal, PredictiveTable.terminalId(token.getLexeme()));
     }
-}
\ No newline at end of file
+}
@@ -1,11 +1,7 @@
 package parser.grammar;
 
-import java.util.Arrays;
-import java.util.HashSet;
 import java.util.Set;
 
-import lexer.TokenType;
-
 public enum NonTerminal {
     // Core Program Structures
     SP_PROG,
@@ -138,26 +134,13 @@ public enum NonTerminal {
 
 
 
-     private final Set<TokenType> firstSet = new HashSet<>();
-     private final Set<TokenType> followSet = new HashSet<>();
-
-     // **Method to define First Set**
-     public void addFirst(TokenType... tokens) {
-          firstSet.addAll(Arrays.asList(tokens));
-     }
-
-     // **Method to define Follow Set**
-     public void addFollow(TokenType... tokens) {
-          followSet.addAll(Arrays.asList(tokens));
-     }
-
-     // **Get FIRST Set**
-     public Set<TokenType> getFirst() {
-          return firstSet;
+     // **Get FIRST Set**, computed from the productions in GrammarRule
+     public Set<String> getFirst() {
+          return PredictiveTable.first(this);
      }
 
-     // **Get FOLLOW Set**
-     public Set<TokenType> getFollow() {
-          return followSet;
+     // **Get FOLLOW Set**, computed from the productions in GrammarRule
+     public Set<String> getFollow() {
+          return PredictiveTable.follow(this);
      }
 }
@@ -0,0 +1,229 @@
+package parser.grammar;
+
+import java.util.*;
+
+/**
+ * LL(1) predictive parse table computed from the productions of {@link GrammarRule},
+ * as compiled by {@link CompiledGrammar}.
+ *
+ * The nullable, FIRST and FOLLOW sets are computed by fixed-point iteration, and
+ * each nonterminal gets a row indexed by terminal id holding the only production
+ * predicted for that lookahead, {@link #NO_PRODUCTION}, or {@link #CONFLICT} when
+ * several are. Only conflicting cells need the parser to try productions one
+ * after another.
+ *
+ * The nonterminal made for an optional element predicts its content on the
+ * terminals that can start it and its empty production on every terminal, so
+ * the element is skipped when its content cannot start or fails.
+ */
+public class PredictiveTable {
+    public static final int END = CompiledGrammar.END;
+    public static final int OTHER = CompiledGrammar.OTHER;
+
+    public static final int NO_PRODUCTION = -1;
+    public static final int CONFLICT = -2;
+
+    // All indexed by nonterminal id
+    private static final boolean[] nullable;
+    private static final BitSet[] first;
+    private static final BitSet[] follow;
+    private static final BitSet[][] predict;
+    private static final int[][] table;
+
+    static {
+        int count = CompiledGrammar.nonTerminalCount();
+        nullable = new boolean[count];
+        first = new BitSet[count];
+        follow = new BitSet[count];
+        predict = new BitSet[count][];
+        table = new int[count][];
+        for (int nonTerminal = 0; nonTerminal < count; nonTerminal++) {
+            first[nonTerminal] = new BitSet();
+            follow[nonTerminal] = new BitSet();
+        }
+        computeFirst();
+        computeFollow();
+        buildTable();
+    }
+
+    private PredictiveTable() {
+    }
+
+    /**
+     * Computes the nullable nonterminals and the FIRST sets, repeating until nothing changes.
+     */
+    private static void computeFirst() {
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int nonTerminal = 0; nonTerminal < first.length; nonTerminal++) {
+                BitSet set = first[nonTerminal];
+                int before = set.cardinality();
+                for (int[] production : CompiledGrammar.productions(nonTerminal)) {
+                    if (addFirst(production, 0, set) && !nullable[nonTerminal]) {
+                        nullable[nonTerminal] = true;
+                        changed = true;
+                    }
+                }
+                changed |= set.cardinality() != before;
+            }
+        }
+    }
+
+    /**
+     * Adds the FIRST set of a production from the given index to a set.
+     *
+     * @return true if that part of the production can derive the empty string
+     */
+    private static boolean addFirst(int[] production, int from, BitSet into) {
+        for (int i = from; i < production.length; i++) {
+            int symbol = production[i];
+            if (CompiledGrammar.isTerminal(symbol)) {
+                into.set(CompiledGrammar.terminal(symbol));
+                return false;
+            }
+            into.or(first[symbol]);
+            if (!nullable[symbol]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Computes the FOLLOW sets, repeating until nothing changes. The start symbol is followed by {@link #END}.
+     */
+    private static void computeFollow() {
+        follow[NonTerminal.SP_PROG.ordinal()].set(END);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int owner = 0; owner < follow.length; owner++) {
+                for (int[] production : CompiledGrammar.productions(owner)) {
+                    for (int i = 0; i < production.length; i++) {
+                        int symbol = production[i];
+                        if (CompiledGrammar.isTerminal(symbol)) {
+                            continue;
+                        }
+                        BitSet set = follow[symbol];
+                        int before = set.cardinality();
+                        if (addFirst(production, i + 1, set)) {
+                            set.or(follow[owner]);
+                        }
+                        changed |= set.cardinality() != before;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Fills the predict set of every production and the table rows.
+     */
+    private static void buildTable() {
+        int terminals = CompiledGrammar.terminalCount();
+        for (int nonTerminal = 0; nonTerminal < table.length; nonTerminal++) {
+            int[][] productions = CompiledGrammar.productions(nonTerminal);
+            BitSet[] sets = new BitSet[productions.length];
+            int[] row = new int[terminals];
+            Arrays.fill(row, NO_PRODUCTION);
+
+            for (int p = 0; p < productions.length; p++) {
+                sets[p] = new BitSet();
+                if (CompiledGrammar.isSynthetic(nonTerminal)) {
+                    // The content of an optional element on what can start it, the empty production always
+                    if (productions[p].length == 0) {
+                        sets[p].set(0, terminals);
+                    } else {
+                        addFirst(productions[p], 0, sets[p]);
+                    }
+                } else if (addFirst(productions[p], 0, sets[p])) {
+                    sets[p].or(follow[nonTerminal]);
+                }
+                for (int t = sets[p].nextSetBit(0); t >= 0; t = sets[p].nextSetBit(t + 1)) {
+                    row[t] = row[t] == NO_PRODUCTION ? p : CONFLICT;
+                }
+            }
+            predict[nonTerminal] = sets;
+            table[nonTerminal] = row;
+        }
+    }
+
+    /**
+     * Returns the id of a terminal.
+     *
+     * @param lexeme The lexeme of a token.
+     * @return The id of the terminal, or {@link #OTHER} if the grammar does not use it.
+     */
+    public static int terminalId(String lexeme) {
+        return CompiledGrammar.terminalId(lexeme);
+    }
+
+    public static int terminalCount() {
+        return CompiledGrammar.terminalCount();
+    }
+
+    /**
+     * Returns the table cell of a nonterminal for a lookahead.
+     *
+     * @param nonTerminal The id of the nonterminal.
+     * @param terminal The id of the lookahead.
+     * @return The production index, {@link #NO_PRODUCTION} or {@link #CONFLICT}.
+     */
+    public static int lookup(int nonTerminal, int terminal) {
+        return table[nonTerminal][terminal];
+    }
+
+    /**
+     * Returns whether a production can start with the lookahead, or derive the
+     * empty string and be followed by it.
+     */
+    public static boolean predicts(int nonTerminal, int production, int terminal) {
+        return predict[nonTerminal][production].get(terminal);
+    }
+
+    /**
+     * Returns whether the lookahead can come right after the given nonterminal.
+     */
+    public static boolean follows(int nonTerminal, int terminal) {
+        return follow[nonTerminal].get(terminal);
+    }
+
+    /**
+     * Returns whether a nonterminal can start with the lookahead.
+     */
+    public static boolean startsWith(NonTerminal nonTerminal, int terminal) {
+        return first[nonTerminal.ordinal()].get(terminal);
+    }
+
+    public static boolean isNullable(NonTerminal nonTerminal) {
+        return nullable[nonTerminal.ordinal()];
+    }
+
+    public static Set<String> first(NonTerminal nonTerminal) {
+        return names(first[nonTerminal.ordinal()]);
+    }
+
+    public static Set<String> follow(NonTerminal nonTerminal) {
+        return names(follow[nonTerminal.ordinal()]);
+    }
+
+    private static Set<String> names(BitSet set) {
+        Set<String> names = new LinkedHashSet<>();
+        for (int t = set.nextSetBit(0); t >= 0; t = set.nextSetBit(t + 1)) {
+            names.add(CompiledGrammar.terminalName(t));
+        }
+        return names;
+    }
+
+    /**
+     * Returns the table rows of the nonterminals of the grammar, indexed by terminal id.
+     */
+    public static EnumMap<NonTerminal, int[]> getTable() {
+        EnumMap<NonTerminal, int[]> copy = new EnumMap<>(NonTerminal.class);
+        for (NonTerminal nonTerminal : NonTerminal.values()) {
+            copy.put(nonTerminal, table[nonTerminal.ordinal()].clone());
+        }
+        return copy;
+    }
+}
@@ -0,0 +1,192 @@
+package lexer;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+import language.SpecialWords;
+
+/**
+ * Differential check of the recognizers in {@link Patterns} against the
+ * regular expressions they replaced. Every match and is method is run over
+ * the lines, words and short substrings of the .txt files in a corpus
+ * directory, plus a set of edge cases, and must agree with String.matches on
+ * the original regex. The first disagreement is printed and the check exits
+ * with status 1.
+ *
+ * This lives in the check source root, outside the production sources, and is
+ * compiled against them. Usage, from the repository root:
+ *
+ *     javac -encoding UTF-8 -d /tmp/xpresso $(find code -name '*.java')
+ *     javac -encoding UTF-8 -cp /tmp/xpresso -d /tmp/xpresso-check $(find check -name '*.java')
+ *     java -cp /tmp/xpresso:/tmp/xpresso-check lexer.PatternsCheck test
+ */
+public class PatternsCheck {
+
+    // Longest substring of a word or line that is checked on its own
+    private static final int MAX_SUBSTRING = 8;
+
+    // The regular expressions Patterns used before its recognizers were hand-written
+    private static final SpecialWords specialWords = new SpecialWords();
+    private static final String IDENTIFIER_REGEX = "^[a-zA-Z][a-zA-Z0-9_]*$";
+    private static final String ASSIGN_OP_REGEX = "^(=|\\+=|-=|\\*=|/=|%=|\\?=)$";
+    private static final String ARITHMETIC_OP_REGEX = "^(\\+|-|\\*|/|%|\\^)$";
+    private static final String LOGICAL_OP_REGEX = "^(\\|\\||&&|!)$";
+    private static final String RELATIONAL_OP_REGEX = "^(==|!=|<=|>=|<|>)$";
+    private static final String BITWISE_OP_REGEX = "^(>>>|>>|<<|\\^\\||\\&|\\||\\^|~)$";
+    private static final String UNARY_OP_REGEX = "^(\\+|-|\\+\\+|\\-\\-|\\*\\*|!)$";
+    private static final String TERNARY_OP_REGEX = "^\\?\\s*:\\s*$";
+    private static final String METHOD_OP_REGEX = "^(->|::|\\.)$";
+    private static final String INHERIT_OP_REGEX = "^(\\:>|\\:>>)$";
+    private static final String LOOP_OP_REGEX = "^(\\.\\.\\.?|\\.\\.)$";
+    private static final String KEYWORDS_REGEX = "^(?:" + specialWords.getKeywordsRegex() + ")$";
+    private static final String RESERVED_WORDS_REGEX = "^(?:" + specialWords.getReservedWordsRegex() + ")$";
+    private static final String SINGLE_LINE_COMMENT_REGEX = "^//[^\\n]*$";
+    private static final String DELIMITERS_REGEX = "^(\\(|\\)|\\{|\\}|\\[|\\]|,|;|:|@|\\.)$";
+    private static final String STRING_LITERAL_REGEX = "^\"([^\"\\\\]|\\\\.)*\"$";
+    private static final String CHARACTER_LITERAL_REGEX = "^'([^'\\\\]|\\\\.)*'$";
+    private static final String OBJECT_DELIMITER_REGEX = "^<[a-zA-Z][a-zA-Z0-9_]*>$";
+    private static final String INTEGER_REGEX = "^[-+]?\\d+$";
+    private static final String FLOAT_REGEX = "^[-+]?\\d*\\.\\d+([eE][-+]?\\d+)?$";
+    private static final String COMPLEX_LITERAL_REGEX =
+                    "^\\$\\(\\s*[-+]?\\d*\\.?\\d+\\s*,\\s*[-+]?\\d*\\.?\\d+\\s*\\)$";
+    private static final String FRACTION_LITERAL_REGEX = "^\\[\\d+\\|[1-9]\\d*]$";
+    private static final String DATE_LITERAL_REGEX = "^\\[\\d{4}\\|\\d{2}\\|\\d{2}]$";
+
+    // Inputs that exercise the edges of the recognizers whether or not the corpus has them
+    private static final String[] EDGE_CASES = {
+        "", " ", "+", "-", "++", "--", "+-1", "-0", "+007", "?", ":", "?:", "? :", "?  :", "?\t:\n", "? : ",
+        "?\u00A0:", "?:x", "/", "//", "//x", "//x\n", "//x\r", "// a // b", "/x", "<>", "<a>", "<a_1>",
+        "<1a>", "<_a>", "<a-b>", "<a", "a>", "<<a>>", "a", "A", "_", "a_1", "1a", "\u00E9", "a\u00E9",
+        "\u0661\u0662", "+\u0661", "<\u00E9>", "\uFF11", ".", "..", "...", "....", "->", "::", ":>", ":>>",
+        "^|", ">>>", "\"\"", "\"a\\\"\"", "\"a", "''", "'a'", "'\\''", ".5", "1.", "1.5e", "1.5e+3",
+        "$(1,2)", "$( -1.5 , +.5 )", "$(1 2)", "[1|2]", "[1|0]", "[2024|01|31]", "[24|1|31]",
+        "class", "Class", "int", "\u0000", "\n", "\r\n"
+    };
+
+    private interface Check {
+        boolean matches(String input);
+    }
+
+    private record Method(String name, Check recognizer, Predicate<String> reference) {
+    }
+
+    private static final List<Method> METHODS = List.of(
+        method("matchIdentifier", Patterns::matchIdentifier, IDENTIFIER_REGEX),
+        method("matchIdentifier(char[])", PatternsCheck::matchIdentifierChars, IDENTIFIER_REGEX),
+        method("matchAssignOp", Patterns::matchAssignOp, ASSIGN_OP_REGEX),
+        method("matchArithmeticOp", Patterns::matchArithmeticOp, ARITHMETIC_OP_REGEX),
+        method("matchLogicalOp", Patterns::matchLogicalOp, LOGICAL_OP_REGEX),
+        method("matchRelationalOp", Patterns::matchRelationalOp, RELATIONAL_OP_REGEX),
+        method("matchBitwiseOp", Patterns::matchBitwiseOp, BITWISE_OP_REGEX),
+        method("matchUnaryOp", Patterns::matchUnaryOp, UNARY_OP_REGEX),
+        method("matchTernaryOp", Patterns::matchTernaryOp, TERNARY_OP_REGEX),
+        method("matchMethodOp", Patterns::matchMethodOp, METHOD_OP_REGEX),
+        method("matchInheritOp", Patterns::matchInheritOp, INHERIT_OP_REGEX),
+        method("matchLoopOp", Patterns::matchLoopOp, LOOP_OP_REGEX),
+        method("isKeyword", Patterns::isKeyword, KEYWORDS_REGEX),
+        method("isReservedWord", Patterns::isReservedWord, RESERVED_WORDS_REGEX),
+        method("isSingleLineComment", Patterns::isSingleLineComment, SINGLE_LINE_COMMENT_REGEX),
+        method("matchDelimiterOrBracket", Patterns::matchDelimiterOrBracket, DELIMITERS_REGEX),
+        method("matchStringLiteral", Patterns::matchStringLiteral, STRING_LITERAL_REGEX),
+        method("matchCharacterLiteral", Patterns::matchCharacterLiteral, CHARACTER_LITERAL_REGEX),
+        method("matchObjectDelimiter", Patterns::matchObjectDelimiter, OBJECT_DELIMITER_REGEX),
+        method("matchInteger", Patterns::matchInteger, INTEGER_REGEX),
+        method("matchFloat", Patterns::matchFloat, FLOAT_REGEX),
+        method("matchComplexLiteral", Patterns::matchComplexLiteral, COMPLEX_LITERAL_REGEX),
+        method("matchFractionLiteral", Patterns::matchFractionLiteral, FRACTION_LITERAL_REGEX),
+        method("matchDateLiteral", Patterns::matchDateLiteral, DATE_LITERAL_REGEX)
+    );
+
+    private static Method method(String name, Check recognizer, String regex) {
+        return new Method(name, recognizer, input -> input != null && input.matches(regex));
+    }
+
+    private static boolean matchIdentifierChars(String input) {
+        if (input == null) return false;
+        // Surround the input so the offset and length are used, not the whole array
+        char[] chars = ("#" + input + "#").toCharArray();
+        return Patterns.matchIdentifier(chars, 1, input.length());
+    }
+
+    public static void main(String[] args) {
+        Path corpus = Path.of(args.length > 0 ? args[0] : "test");
+        Set<String> inputs = new LinkedHashSet<>(List.of(EDGE_CASES));
+        try {
+            collectInputs(corpus, inputs);
+        } catch (IOException e) {
+            System.err.println("Error reading corpus " + corpus + ": " + e.getMessage());
+            System.exit(2);
+        }
+
+        List<String> candidates = new ArrayList<>(inputs);
+        candidates.add(null);
+        for (Method method : METHODS) {
+            for (String input : candidates) {
+                boolean expected = method.reference().test(input);
+                boolean actual = method.recognizer().matches(input);
+                if (expected != actual) {
+                    System.err.println("Mismatch in " + method.name() + " for " + describe(input)
+                            + ": regex says " + expected + ", recognizer says " + actual);
+                    System.exit(1);
+                }
+            }
+        }
+        System.out.println("Patterns agree with their regexes on " + candidates.size()
+                + " inputs for " + METHODS.size() + " methods.");
+    }
+
+    /**
+     * Adds the lines of every .txt file in the corpus, their words and the
+     * short substrings of both.
+     */
+    private static void collectInputs(Path corpus, Set<String> inputs) throws IOException {
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(corpus)) {
+            files = listing.filter(file -> file.toString().endsWith(".txt")).sorted().toList();
+        }
+        if (files.isEmpty()) {
+            throw new IOException("no .txt files found");
+        }
+        for (Path file : files) {
+            String text = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+            for (String line : text.split("\n", -1)) {
+                inputs.add(line);
+                inputs.add(line + "\n");
+                addSubstrings(line, inputs);
+                for (String word : line.trim().split("\\s+")) {
+                    inputs.add(word);
+                    addSubstrings(word, inputs);
+                }
+            }
+        }
+    }
+
+    private static void addSubstrings(String text, Set<String> inputs) {
+        for (int start = 0; start < text.length(); start++) {
+            for (int end = start + 1; end <= Math.min(text.length(), start + MAX_SUBSTRING); end++) {
+                inputs.add(text.substring(start, end));
+            }
+        }
+    }
+
+    private static String describe(String input) {
+        if (input == null) return "null";
+        StringBuilder text = new StringBuilder("\"");
+        for (char c : input.toCharArray()) {
+            if (c >= ' ' && c <= '~') {
+                text.append(c);
+            } else {
+                text.append(String.format("\\u%04x", (int) c));
+            }
+        }
+        return text.append('"').toString();
+    }
+}
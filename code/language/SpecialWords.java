@@ -1,37 +1,152 @@
 package language;
+
+import java.util.Arrays;
+
 /**
- * Manages the keywords and reserved words of the language. 
- * Provides utilities to check if a string is a keyword or a reserved word 
+ * Manages the keywords and reserved words of the language.
+ * Provides utilities to check if a string is a keyword or a reserved word
  * to differentiate identifiers from language constructs.
+ * Lookups go through a perfect hash table generated from the word lists,
+ * so a word can be classified straight from a char buffer.
  */
 
 public class SpecialWords {
-    private final String[] reservedWords = {"abstract", "after", "ALIAS", "before", "bool", "byte", "char", "class",
+    private static final String[] reservedWords = {"abstract", "after", "ALIAS", "before", "bool", "byte", "char", "class",
             "Complex", "Date", "double", "exclude", "export_as", "Frac", "filter_by", "final", "float", "inline_query",
             "inspect", "int", "long", "main", "modify", "native", "private", "protected", "public", "Rational", "return",
             "short", "static", "STRICT", "strictfp", "str", "today", "toMixed", "transient", "validate", "volatile", "isValid"};
-    private final String[] keywords = {"break", "case", "day", "default", "do", "else", "exit", "exit-when", "for",
+    private static final String[] keywords = {"break", "case", "day", "default", "do", "else", "exit", "exit-when", "for",
             "from", "get", "having", "if", "in", "Input", "limit", "month", "order_by", "Output", "print", "select",
             "switch", "switch-fall", "System", "void", "while", "where", "where-type", "year"};
+    private static final String[] boolLiterals = {"true", "false"};
 
     private static final String noiseWord = "general";
 
-    public boolean isKeyword(String lexeme) {
-        for (String keyword : keywords) {
-            if (lexeme.equals(keyword)) {
-                return true;
+    /**
+     * Category of a word found in the perfect hash table.
+     */
+    public enum WordType {
+        KEYWORD,
+        RESERVED,
+        BOOL_LITERAL
+    }
+
+    // Perfect hash table: slot -> word and its category (null when the slot is empty)
+    private static final int TABLE_SIZE = 256;
+    private static final int TABLE_MASK = TABLE_SIZE - 1;
+    private static final char[][] tableWords = new char[TABLE_SIZE][];
+    private static final WordType[] tableTypes = new WordType[TABLE_SIZE];
+    // Places every word in its own slot; search again from 1 with buildTable when the word lists change
+    private static final int hashSeed = 15624;
+
+    static {
+        if (!buildTable(hashSeed)) {
+            throw new ExceptionInInitializerError("Special words collide in the hash table under seed " + hashSeed);
+        }
+    }
+
+    /**
+     * Fills the hash table using the given seed.
+     *
+     * @return false if two words collide under this seed
+     */
+    private static boolean buildTable(int seed) {
+        Arrays.fill(tableWords, null);
+        Arrays.fill(tableTypes, null);
+        // Keywords go first so they take precedence, as in the original keyword-then-reserved check
+        return addWords(keywords, WordType.KEYWORD, seed)
+            && addWords(reservedWords, WordType.RESERVED, seed)
+            && addWords(boolLiterals, WordType.BOOL_LITERAL, seed);
+    }
+
+    private static boolean addWords(String[] words, WordType type, int seed) {
+        for (String word : words) {
+            char[] chars = word.toCharArray();
+            int slot = hash(seed, chars, 0, chars.length);
+            if (tableWords[slot] != null) {
+                if (Arrays.equals(tableWords[slot], chars)) {
+                    continue;
+                }
+                return false;
             }
+            tableWords[slot] = chars;
+            tableTypes[slot] = type;
         }
-        return false;
+        return true;
     }
 
-    public boolean isReservedWord(String lexeme) {
-        for (String reservedWord : reservedWords) {
-            if (lexeme.equals(reservedWord)) {
-                return true;
+    private static int hash(int seed, char[] chars, int start, int length) {
+        int h = seed;
+        for (int i = start; i < start + length; i++) {
+            h = h * 31 + chars[i];
+        }
+        return mix(h);
+    }
+
+    private static int hash(int seed, String word) {
+        int h = seed;
+        for (int i = 0; i < word.length(); i++) {
+            h = h * 31 + word.charAt(i);
+        }
+        return mix(h);
+    }
+
+    // Spreads the polynomial hash over the table slots
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        return h & TABLE_MASK;
+    }
+
+    /**
+     * Classifies the word held in a char buffer without creating a String.
+     *
+     * @param chars  buffer containing the word
+     * @param start  index of the first character of the word
+     * @param length number of characters in the word
+     * @return the category of the word, or null if it is not a special word
+     */
+    public static WordType classify(char[] chars, int start, int length) {
+        int slot = hash(hashSeed, chars, start, length);
+        char[] candidate = tableWords[slot];
+        if (candidate == null || candidate.length != length) {
+            return null;
+        }
+        for (int i = 0; i < length; i++) {
+            if (candidate[i] != chars[start + i]) {
+                return null;
+            }
+        }
+        return tableTypes[slot];
+    }
+
+    /**
+     * Classifies a word given as a String.
+     *
+     * @param lexeme the word to classify
+     * @return the category of the word, or null if it is not a special word
+     */
+    public static WordType classify(String lexeme) {
+        int slot = hash(hashSeed, lexeme);
+        char[] candidate = tableWords[slot];
+        if (candidate == null || candidate.length != lexeme.length()) {
+            return null;
+        }
+        for (int i = 0; i < candidate.length; i++) {
+            if (candidate[i] != lexeme.charAt(i)) {
+                return null;
             }
         }
-        return false;
+        return tableTypes[slot];
+    }
+
+    public boolean isKeyword(String lexeme) {
+        return classify(lexeme) == WordType.KEYWORD;
+    }
+
+    public boolean isReservedWord(String lexeme) {
+        return classify(lexeme) == WordType.RESERVED;
     }
 
     public boolean isNoiseWord(String lexeme) {
@@ -46,4 +161,4 @@ public class SpecialWords {
     public String getReservedWordsRegex() {
         return String.join("|", reservedWords);
     }
-}
\ No newline at end of file
+}
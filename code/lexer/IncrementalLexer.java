@@ -0,0 +1,312 @@
+package lexer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import util.ErrorHandler;
+import util.SourceBuffer;
+import util.SourceBufferReader;
+import util.SourceReader;
+import util.ErrorHandler.LexicalError;
+import util.SourceReader.SourceReaderException;
+
+/**
+ * Keeps the tokens of a document up to date as it is edited, for editor integrations.
+ *
+ * The document is lexed once in INLINE mode. Restart points are recorded at every
+ * top-level token boundary where the previous token is not whitespace, because
+ * {@code isUnaryContext} looks no further back than that token. An edit is re-lexed
+ * from the last restart point that lies far enough before it to be outside the
+ * lookahead of earlier tokens. Lexing stops as soon as it reaches a restart point
+ * past the edit that agrees with the old stream, which is usually just past the
+ * end of the edited line. The new tokens and errors are spliced in, and the
+ * positions after them are shifted. The amount of text lexed depends on the
+ * edit, not on the size of the document.
+ */
+public class IncrementalLexer {
+    private final String filePath;
+    private final SourceBuffer text = new SourceBuffer();
+    private final TokenStream tokens = new TokenStream(text);
+    private final List<LexicalError> errors = new ArrayList<>();
+    private final Checkpoints checkpoints = new Checkpoints();
+
+    /**
+     * Describes how an edit changed the token stream: the tokens from
+     * {@code start} to {@code start + removed} were replaced by {@code inserted} tokens.
+     */
+    public static final class Change {
+        private final int start;
+        private final int removed;
+        private final int inserted;
+
+        Change(int start, int removed, int inserted) {
+            this.start = start;
+            this.removed = removed;
+            this.inserted = inserted;
+        }
+
+        public int getStart() {
+            return start;
+        }
+
+        public int getRemoved() {
+            return removed;
+        }
+
+        public int getInserted() {
+            return inserted;
+        }
+    }
+
+    /**
+     * Restart points: the reader position before a top-level token, the number
+     * of tokens and errors produced up to there, and the context that
+     * isUnaryContext sees there, stored as parallel arrays.
+     */
+    private static final class Checkpoints {
+        int[] offsets = new int[64];
+        int[] tokens = new int[64];
+        int[] errors = new int[64];
+        int[] lines = new int[64];
+        int[] columns = new int[64];
+        int[] contexts = new int[64];
+        int size = 0;
+
+        void add(int offset, int tokenCount, int errorCount, int line, int column, int context) {
+            if (size == offsets.length) {
+                grow(size * 2);
+            }
+            offsets[size] = offset;
+            tokens[size] = tokenCount;
+            errors[size] = errorCount;
+            lines[size] = line;
+            columns[size] = column;
+            contexts[size] = context;
+            size++;
+        }
+
+        private void grow(int capacity) {
+            offsets = Arrays.copyOf(offsets, capacity);
+            tokens = Arrays.copyOf(tokens, capacity);
+            errors = Arrays.copyOf(errors, capacity);
+            lines = Arrays.copyOf(lines, capacity);
+            columns = Arrays.copyOf(columns, capacity);
+            contexts = Arrays.copyOf(contexts, capacity);
+        }
+
+        /**
+         * Returns the checkpoint at the given offset, or -1 if there is none.
+         */
+        int at(int offset) {
+            int index = Arrays.binarySearch(offsets, 0, size, offset);
+            return index >= 0 ? index : -1;
+        }
+
+        /**
+         * Returns the last checkpoint at or before the given offset, or 0 if there is none.
+         */
+        int atOrBefore(int offset) {
+            int index = Arrays.binarySearch(offsets, 0, size, offset);
+            return index >= 0 ? index : Math.max(0, -index - 2);
+        }
+
+        /**
+         * Replaces the checkpoints between from and to with those of another set.
+         */
+        void replace(int from, int to, Checkpoints other) {
+            int tail = size - to;
+            int newSize = from + other.size + tail;
+            if (newSize > offsets.length) {
+                grow(Math.max(offsets.length * 2, newSize));
+            }
+            for (int[][] pair : new int[][][] {
+                {offsets, other.offsets}, {tokens, other.tokens}, {errors, other.errors},
+                {lines, other.lines}, {columns, other.columns}, {contexts, other.contexts}}) {
+                System.arraycopy(pair[0], to, pair[0], from + other.size, tail);
+                System.arraycopy(pair[1], 0, pair[0], from, other.size);
+            }
+            size = newSize;
+        }
+
+        /**
+         * Moves the checkpoints from the given index onwards, as {@link TokenStream#shift} does for tokens.
+         */
+        void shift(int from, int offsetDelta, int tokenDelta, int errorDelta, int lineDelta) {
+            for (int i = from; i < size; i++) {
+                offsets[i] += offsetDelta;
+                tokens[i] += tokenDelta;
+                errors[i] += errorDelta;
+                lines[i] += lineDelta;
+            }
+        }
+    }
+
+    /**
+     * Constructs an IncrementalLexer and lexes the initial contents of the document.
+     *
+     * @param filePath The path of the document, used in error reports.
+     * @param contents The initial contents of the document.
+     */
+    public IncrementalLexer(String filePath, CharSequence contents) {
+        this.filePath = filePath;
+        text.append(contents);
+
+        ErrorHandler errorHandler = new ErrorHandler(false);
+        SourceBufferReader reader = new SourceBufferReader(filePath, text, 0, 1, 0);
+        lex(reader, new Lexer(reader, tokens, errorHandler), tokens, 0, errorHandler, checkpoints, -1, 0);
+        errors.addAll(errorHandler.getErrors());
+    }
+
+    /**
+     * Returns the current tokens of the document, including whitespace, comments and EOF.
+     */
+    public TokenStream getTokens() {
+        return tokens;
+    }
+
+    /**
+     * Returns the lexical errors in the current contents of the document.
+     */
+    public List<LexicalError> getErrors() {
+        return new ArrayList<>(errors);
+    }
+
+    /**
+     * Returns the current contents of the document.
+     */
+    public CharSequence getText() {
+        return text;
+    }
+
+    /**
+     * Applies an edit to the document and re-lexes the part of it that may have changed.
+     * Afterwards the tokens and errors are the same as those of lexing the edited
+     * document from scratch.
+     *
+     * @param offset The offset of the first character replaced.
+     * @param deletedLength The number of characters removed.
+     * @param insertedText The text inserted in their place.
+     * @return How the token stream changed.
+     */
+    public Change edit(int offset, int deletedLength, CharSequence insertedText) {
+        int oldEnd = offset + deletedLength;
+        if (offset < 0 || deletedLength < 0 || oldEnd > text.length()) {
+            throw new IndexOutOfBoundsException(
+                "Edit [" + offset + ", " + oldEnd + ") outside document of length " + text.length());
+        }
+        int newEnd = offset + insertedText.length();
+        int offsetDelta = newEnd - oldEnd;
+
+        // Restart where no earlier token could have peeked at the edited text
+        int restart = checkpoints.atOrBefore(offset - SourceReader.LOOKAHEAD_CAPACITY);
+        int restartTokens = checkpoints.tokens[restart];
+        text.replace(offset, oldEnd, insertedText);
+
+        // Seed the new stream with the token before the restart point for unary detection
+        TokenStream relexed = new TokenStream(text);
+        int seed = 0;
+        if (restartTokens > 0) {
+            relexed.add(tokens, restartTokens - 1);
+            seed = 1;
+        }
+        ErrorHandler errorHandler = new ErrorHandler(false);
+        SourceBufferReader reader = new SourceBufferReader(
+            filePath, text, checkpoints.offsets[restart], checkpoints.lines[restart], checkpoints.columns[restart]);
+        Checkpoints relexedCheckpoints = new Checkpoints();
+        int resume = lex(reader, new Lexer(reader, relexed, errorHandler), relexed, seed,
+            errorHandler, relexedCheckpoints, newEnd, offsetDelta);
+
+        // Rebase the new checkpoints on the tokens and errors kept before the restart point
+        relexedCheckpoints.shift(0, 0, restartTokens, checkpoints.errors[restart], 0);
+        List<LexicalError> relexedErrors = errorHandler.getErrors();
+        int inserted = relexed.size() - seed;
+
+        if (resume == -1) {
+            // Lexing ran to the end of the document; everything from the restart point was replaced
+            int removed = tokens.size() - restartTokens;
+            tokens.replace(restartTokens, tokens.size(), relexed, seed);
+            errors.subList(checkpoints.errors[restart], errors.size()).clear();
+            errors.addAll(relexedErrors);
+            checkpoints.replace(restart, checkpoints.size, relexedCheckpoints);
+            return new Change(restartTokens, removed, inserted);
+        }
+
+        // Splice in the new tokens, errors and checkpoints, then move everything after them
+        int resumeTokens = checkpoints.tokens[resume];
+        int resumeErrors = checkpoints.errors[resume];
+        int lineDelta = reader.getLine() - checkpoints.lines[resume];
+        int removed = resumeTokens - restartTokens;
+        int tokenDelta = inserted - removed;
+        int errorDelta = relexedErrors.size() - (resumeErrors - checkpoints.errors[restart]);
+
+        tokens.replace(restartTokens, resumeTokens, relexed, seed);
+        tokens.shift(restartTokens + inserted, offsetDelta, lineDelta);
+
+        List<LexicalError> replacedErrors = errors.subList(checkpoints.errors[restart], resumeErrors);
+        replacedErrors.clear();
+        replacedErrors.addAll(relexedErrors);
+        for (int i = checkpoints.errors[restart] + relexedErrors.size(); i < errors.size(); i++) {
+            LexicalError error = errors.get(i);
+            errors.set(i, new LexicalError(error.getType(), error.getMessage(),
+                error.getLine() + lineDelta, error.getColumn(), error.getSuggestion()));
+        }
+
+        checkpoints.replace(restart, resume, relexedCheckpoints);
+        checkpoints.shift(restart + relexedCheckpoints.size, offsetDelta, tokenDelta, errorDelta, lineDelta);
+        return new Change(restartTokens, removed, inserted);
+    }
+
+    /**
+     * Lexes top-level tokens into a stream, recording restart points as it goes.
+     * Once the reader has passed {@code syncOffset}, lexing stops at the first
+     * restart point that matches one of the current checkpoints in context and
+     * column. Requiring the same column means everything after it only moves by
+     * whole lines; some error positions pair a token's start line with a later
+     * column, so shifting columns on the edited line would not be reliable.
+     *
+     * @return The index of the matching current checkpoint, or -1 if lexing
+     *         reached the end of the input and added the EOF token.
+     */
+    private int lex(SourceBufferReader reader, Lexer lexer, TokenStream stream, int seed,
+                    ErrorHandler errorHandler, Checkpoints recorded, int syncOffset, int offsetDelta) {
+        try {
+            while (true) {
+                int last = stream.size() - 1;
+                if (last < 0 || stream.type(last) != TokenType.WHITESPACE) {
+                    int offset = reader.getOffset();
+                    int context = context(stream, last);
+                    if (syncOffset >= 0 && offset >= syncOffset) {
+                        int match = checkpoints.at(offset - offsetDelta);
+                        if (match != -1 && checkpoints.contexts[match] == context
+                                && checkpoints.columns[match] == reader.getColumn()) {
+                            return match;
+                        }
+                    }
+                    recorded.add(offset, stream.size() - seed, errorHandler.getErrorCount(),
+                        reader.getLine(), reader.getColumn(), context);
+                }
+                if (!lexer.step()) {
+                    break;
+                }
+            }
+        } catch (SourceReaderException e) {
+            // Reading from memory does not fail
+            throw new IllegalStateException(e);
+        }
+        stream.add(TokenType.EOF, "", reader.getLine(), reader.getColumn());
+        return -1;
+    }
+
+    /**
+     * Encodes what isUnaryContext looks at in the token before a restart point:
+     * its type and whether it closes a group, or -1 if there is no such token.
+     */
+    private static int context(TokenStream stream, int last) {
+        if (last < 0) {
+            return -1;
+        }
+        boolean closesGroup = stream.lexemeEquals(last, ")") || stream.lexemeEquals(last, "]");
+        return stream.type(last).ordinal() * 2 + (closesGroup ? 1 : 0);
+    }
+}
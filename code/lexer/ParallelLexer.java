@@ -0,0 +1,344 @@
+package lexer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import util.EnumCounter;
+import util.ErrorHandler;
+import util.SourceBuffer;
+import util.SourceBufferReader;
+import util.SourceReader;
+import util.ErrorHandler.ErrorType;
+import util.ErrorHandler.LexicalError;
+import util.SourceReader.SourceReaderException;
+
+/**
+ * Lexer that splits a large source at newline boundaries and lexes the chunks
+ * concurrently on a {@link ForkJoinPool}.
+ *
+ * Every chunk after the first is lexed speculatively, as if it started a file,
+ * and records a checkpoint at each token it starts. The chunks are then merged
+ * in order. Where the previous chunk really ended, the merge looks for a
+ * checkpoint of the next chunk at the same offset whose previous token matches
+ * the real one in the ways {@code isUnaryContext} cares about. If there is
+ * none, for example because the chunk started inside a string, char literal,
+ * block comment, {@code $( )} or {@code [ | ]} literal, the seam is re-lexed
+ * sequentially until such a checkpoint is reached. From a matching checkpoint
+ * on, the lexer can only produce what the sequential lexer would, so the merged
+ * tokens and errors are identical to those of {@link Lexer#tokenize()}.
+ */
+public class ParallelLexer extends Lexer {
+    // Files at least this large are worth lexing in parallel
+    public static final long PARALLEL_THRESHOLD = 4L * 1024 * 1024;
+
+    // Smallest chunk handed to a worker, in characters
+    private static final int MIN_CHUNK_SIZE = 1 << 16;
+
+    // Chunks per worker, so that uneven chunks still balance out
+    private static final int CHUNKS_PER_WORKER = 4;
+
+    // Checkpoints kept per chunk; seams almost always resynchronize within the first few
+    private static final int MAX_CHECKPOINTS = 4096;
+
+    private final SourceReader reader;
+    private final TriviaMode triviaMode;
+    private final TriviaChannel trivia;
+    private final ForkJoinPool pool;
+
+    // The stream returned by tokenize(), once it has run
+    private TokenStream tokenized;
+
+    /**
+     * Speculative lexing result for one chunk of the source.
+     */
+    private static final class Chunk {
+        final int start;        // Offset of the first character, just after a newline
+        final int stop;         // No token is started at or after this offset
+        TokenStream tokens;
+        ErrorHandler errors;
+        int[] checkpointOffsets = new int[64];
+        int[] checkpointTokens = new int[64];
+        int[] checkpointErrors = new int[64];
+        int checkpoints = 0;
+        int end;                // Offset where lexing stopped
+        int endLine;            // Line there, counted from 1 at the chunk start
+        int endColumn;
+        int newlines;           // Newlines between start and stop
+
+        Chunk(int start, int stop) {
+            this.start = start;
+            this.stop = stop;
+        }
+
+        void addCheckpoint(int offset, int tokenCount, int errorCount) {
+            if (checkpoints == checkpointOffsets.length) {
+                int capacity = checkpoints * 2;
+                checkpointOffsets = Arrays.copyOf(checkpointOffsets, capacity);
+                checkpointTokens = Arrays.copyOf(checkpointTokens, capacity);
+                checkpointErrors = Arrays.copyOf(checkpointErrors, capacity);
+            }
+            checkpointOffsets[checkpoints] = offset;
+            checkpointTokens[checkpoints] = tokenCount;
+            checkpointErrors[checkpoints] = errorCount;
+            checkpoints++;
+        }
+
+        /**
+         * Returns the checkpoint at the given offset, or -1 if no token started there.
+         */
+        int checkpointAt(int offset) {
+            int index = Arrays.binarySearch(checkpointOffsets, 0, checkpoints, offset);
+            return index >= 0 ? index : -1;
+        }
+    }
+
+    public ParallelLexer(SourceReader reader, TriviaMode triviaMode) {
+        this(reader, triviaMode, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Constructs a ParallelLexer that runs its chunks on the given pool.
+     *
+     * @param reader The source reader to tokenize.
+     * @param triviaMode Where whitespace and comment tokens are sent.
+     * @param pool The pool that lexes the chunks.
+     */
+    public ParallelLexer(SourceReader reader, TriviaMode triviaMode, ForkJoinPool pool) {
+        super(reader, triviaMode);
+        this.reader = reader;
+        this.triviaMode = triviaMode;
+        this.trivia = new TriviaChannel(reader.getSource());
+        this.pool = pool;
+    }
+
+    @Override
+    public TriviaChannel getTrivia() {
+        return trivia;
+    }
+
+    /**
+     * Returns the number of tokens of each type in the stream returned by
+     * {@link #tokenize()} and in the trivia channel. The counts are only
+     * there once tokenize() has returned.
+     *
+     * @return A new counter holding the counts.
+     */
+    @Override
+    public EnumCounter<TokenType> getTokenCounts() {
+        return countTokens(tokenized == null ? new TokenStream(reader.getSource()) : tokenized);
+    }
+
+    /**
+     * Tokenizes the source in parallel chunks. The result, including the errors
+     * reported to the error handler, is the same as a sequential tokenize().
+     *
+     * @return The stream of tokens from the source code.
+     */
+    @Override
+    public TokenStream tokenize() {
+        ErrorHandler errorHandler = getErrorHandler();
+        SourceBuffer text = reader.getSource();
+        try {
+            // Read the whole input into the reader's buffer so chunks can be lexed from memory
+            while (reader.readNext() != SourceReader.EOF) {
+                // The buffer fills as characters are read
+            }
+        } catch (SourceReaderException e) {
+            errorHandler.reportError(
+                ErrorType.FILE_ERROR,
+                "Error reading source file: " + e.getMessage(),
+                reader.getLine(),
+                reader.getColumn()
+            );
+            tokenized = new TokenStream(text);
+            return tokenized;
+        }
+
+        List<Chunk> chunks = split(text);
+        lexChunks(chunks, text);
+        TokenStream merged = merge(chunks, text, errorHandler);
+        tokenized = routeTrivia(merged);
+        return tokenized;
+    }
+
+    /**
+     * Splits the text into chunks that each start right after a newline.
+     */
+    private List<Chunk> split(SourceBuffer text) {
+        int length = text.length();
+        int count = Math.max(1, Math.min(pool.getParallelism() * CHUNKS_PER_WORKER, length / MIN_CHUNK_SIZE));
+        int target = length / count;
+
+        List<Chunk> chunks = new ArrayList<>();
+        int start = 0;
+        while (start < length) {
+            int stop = Math.min(length, start + Math.max(target, MIN_CHUNK_SIZE));
+            while (stop < length && text.charAt(stop - 1) != '\n') {
+                stop++;
+            }
+            chunks.add(new Chunk(start, stop));
+            start = stop;
+        }
+        if (chunks.isEmpty()) {
+            chunks.add(new Chunk(0, 0));
+        }
+        return chunks;
+    }
+
+    /**
+     * Lexes every chunk on the pool.
+     */
+    private void lexChunks(List<Chunk> chunks, SourceBuffer text) {
+        List<Callable<Chunk>> tasks = new ArrayList<>();
+        for (Chunk chunk : chunks) {
+            tasks.add(() -> lexChunk(chunk, text));
+        }
+        try {
+            for (Future<Chunk> future : pool.invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Parallel lexing interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Parallel lexing failed: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    private Chunk lexChunk(Chunk chunk, SourceBuffer text) throws SourceReaderException {
+        SourceBufferReader chunkReader = new SourceBufferReader(reader.getFilePath(), text, chunk.start, 1, 0);
+        chunk.tokens = new TokenStream(text);
+        chunk.errors = new ErrorHandler(false);
+        Lexer lexer = new Lexer(chunkReader, chunk.tokens, chunk.errors);
+
+        while (chunkReader.getOffset() < chunk.stop) {
+            if (chunk.checkpoints < MAX_CHECKPOINTS) {
+                chunk.addCheckpoint(chunkReader.getOffset(), chunk.tokens.size(), chunk.errors.getErrorCount());
+            }
+            if (!lexer.step()) {
+                break;
+            }
+        }
+        chunk.end = chunkReader.getOffset();
+        chunk.endLine = chunkReader.getLine();
+        chunk.endColumn = chunkReader.getColumn();
+
+        for (int i = chunk.start; i < chunk.stop; i++) {
+            if (text.charAt(i) == '\n') {
+                chunk.newlines++;
+            }
+        }
+        return chunk;
+    }
+
+    /**
+     * Joins the chunk results in order, re-lexing each seam sequentially until
+     * it lines up with a checkpoint of the chunk that follows.
+     */
+    private TokenStream merge(List<Chunk> chunks, SourceBuffer text, ErrorHandler errorHandler) throws IllegalStateException {
+        TokenStream merged = new TokenStream(text);
+        int position = 0;
+        int line = 1;
+        int column = 0;
+        int lineBase = 0; // Lines before the start of the current chunk
+
+        try {
+            for (Chunk chunk : chunks) {
+                // Re-lex from the real end of the previous chunk until a checkpoint matches
+                SourceBufferReader seamReader = new SourceBufferReader(reader.getFilePath(), text, position, line, column);
+                Lexer seam = new Lexer(seamReader, merged, errorHandler);
+                boolean synced = false;
+                while (position < chunk.end) {
+                    int checkpoint = chunk.checkpointAt(position);
+                    if (checkpoint != -1 && matches(merged, chunk, checkpoint)) {
+                        append(merged, errorHandler, chunk, checkpoint, lineBase);
+                        position = chunk.end;
+                        line = chunk.endLine + lineBase;
+                        column = chunk.endColumn;
+                        synced = true;
+                        break;
+                    }
+                    if (!seam.step()) {
+                        break;
+                    }
+                    position = seamReader.getOffset();
+                }
+                if (!synced) {
+                    position = seamReader.getOffset();
+                    line = seamReader.getLine();
+                    column = seamReader.getColumn();
+                }
+                lineBase += chunk.newlines;
+            }
+
+            // Lex whatever the last chunk left, then close the stream
+            SourceBufferReader tailReader = new SourceBufferReader(reader.getFilePath(), text, position, line, column);
+            Lexer tail = new Lexer(tailReader, merged, errorHandler);
+            while (tail.step()) {
+                // Only reached if the last seam stopped short of the end
+            }
+            merged.add(TokenType.EOF, "", tailReader.getLine(), tailReader.getColumn());
+        } catch (SourceReaderException e) {
+            // Reading from memory does not fail
+            throw new IllegalStateException(e);
+        }
+        return merged;
+    }
+
+    /**
+     * Checks whether continuing from a checkpoint gives the same result as the
+     * sequential lexer. The token before the checkpoint must not be whitespace,
+     * so isUnaryContext cannot reach back across the seam, and it must agree
+     * with the real previous token in type and in closing a group.
+     */
+    private static boolean matches(TokenStream merged, Chunk chunk, int checkpoint) {
+        int tokenCount = chunk.checkpointTokens[checkpoint];
+        if (tokenCount == 0 || merged.isEmpty()) {
+            return false;
+        }
+        int real = merged.size() - 1;
+        int speculative = tokenCount - 1;
+        TokenType type = merged.type(real);
+        return type != TokenType.WHITESPACE
+            && type == chunk.tokens.type(speculative)
+            && closesGroup(merged, real) == closesGroup(chunk.tokens, speculative);
+    }
+
+    private static boolean closesGroup(TokenStream tokens, int index) {
+        return tokens.lexemeEquals(index, ")") || tokens.lexemeEquals(index, "]");
+    }
+
+    /**
+     * Appends the tokens and errors of a chunk from the given checkpoint on,
+     * moving them from chunk-relative lines to file lines.
+     */
+    private static void append(TokenStream merged, ErrorHandler errorHandler, Chunk chunk, int checkpoint, int lineBase) {
+        for (int i = chunk.checkpointTokens[checkpoint]; i < chunk.tokens.size(); i++) {
+            merged.add(chunk.tokens, i, lineBase);
+        }
+        List<LexicalError> errors = chunk.errors.getErrors();
+        for (int i = chunk.checkpointErrors[checkpoint]; i < errors.size(); i++) {
+            LexicalError error = errors.get(i);
+            errorHandler.reportError(error.getType(), error.getMessage(),
+                error.getLine() + lineBase, error.getColumn(), error.getSuggestion());
+        }
+    }
+
+    /**
+     * Moves whitespace and comments out of the merged stream according to the trivia mode.
+     * The sequential lexer treats trivia the same way in every mode, so splitting
+     * the inline result gives the same streams it would.
+     */
+    private TokenStream routeTrivia(TokenStream merged) {
+        return switch (triviaMode) {
+            case INLINE -> merged;
+            case CHANNEL -> trivia.split(merged);
+            case DROP -> merged.filter(type -> type != TokenType.WHITESPACE && type != TokenType.COMMENT);
+        };
+    }
+}
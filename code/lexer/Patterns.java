@@ -1,171 +1,234 @@
 package lexer;
 
+import java.util.regex.Pattern;
+
 import language.SpecialWords;
+import language.SpecialWords.WordType;
 
 /**
- * Patterns class containing regular expressions and matching methods
+ * Patterns class containing recognizers and matching methods
  * for various components of the S-presso programming language.
+ * Fixed operator and delimiter sets are matched with switches, simple
+ * character classes with char loops, keywords and reserved words with the
+ * SpecialWords hash table, and the remaining literal forms with regular
+ * expressions compiled once when the class is loaded.
  */
 public class Patterns {
 
-    private static final SpecialWords specialWords = new SpecialWords();
-
-    // Identifiers: Starts with a letter, followed by letters, digits, or underscores
-    private static final String IDENTIFIER_REGEX = "^[a-zA-Z][a-zA-Z0-9_]*$";
-
-    // Assignment Operators: =, +=, -=, *=, /=, %=, ?=
-    private static final String ASSIGN_OP_REGEX = "^(=|\\+=|-=|\\*=|/=|%=|\\?=)$";
-
-    // Arithmetic Operators: +, -, *, /, %, ^
-    private static final String ARITHMETIC_OP_REGEX = "^(\\+|-|\\*|/|%|\\^)$";
-
-    // Logical Operators: ||, &&, !
-    private static final String LOGICAL_OP_REGEX = "^(\\|\\||&&|!)$";
-
-    // Relational Operators: ==, !=, <, >, <=, >=
-    private static final String RELATIONAL_OP_REGEX = "^(==|!=|<=|>=|<|>)$";
-
-    // Bitwise Operators: &, |, ^|, ~, <<, >>, >>>
-    private static final String BITWISE_OP_REGEX = "^(>>>|>>|<<|\\^\\||\\&|\\||\\^|~)$";
-
-    // Unary Operators: +, -, ++, --, **, !
-    private static final String UNARY_OP_REGEX = "^(\\+|-|\\+\\+|\\-\\-|\\*\\*|!)$";
-
-    // Ternary Operator: ? :
-    private static final String TERNARY_OP_REGEX = "^\\?\\s*:\\s*$";
-
-    // Method Reference Operators: ., ::, ->
-    private static final String METHOD_OP_REGEX = "^(->|::|\\.)$";
-
-    // Inherit Operators: :>, :>>
-    private static final String INHERIT_OP_REGEX = "^(\\:>|\\:>>)$";
-
-    // Loop Operators: .., ...
-    private static final String LOOP_OP_REGEX = "^(\\.\\.\\.?|\\.\\.)$";
-
-    // Use SpecialWords to dynamically generate regex for keywords and reserved words
-    private static final String KEYWORDS_REGEX = "^(?:" + specialWords.getKeywordsRegex() + ")$";
-    private static final String RESERVED_WORDS_REGEX = "^(?:" + specialWords.getReservedWordsRegex() + ")$";
-
-    // Single-Line Comments: Starts with //
-    private static final String SINGLE_LINE_COMMENT_REGEX = "^//[^\\n]*$";
-
-    // Delimiters and Brackets: (), {}, [], ,, ;, :, @, .
-    private static final String DELIMITERS_REGEX = "^(\\(|\\)|\\{|\\}|\\[|\\]|,|;|:|@|\\.)$";
-
     // String Literals: Starts and ends with "
-    private static final String STRING_LITERAL_REGEX = "^\"([^\"\\\\]|\\\\.)*\"$";
+    private static final Pattern STRING_LITERAL_PATTERN = Pattern.compile("^\"([^\"\\\\]|\\\\.)*\"$");
 
     // Character Literals: Starts and ends with '
-    private static final String CHARACTER_LITERAL_REGEX = "^'([^'\\\\]|\\\\.)*'$";
-
-    // Object Delimiters: Starts and ends with <>
-    private static final String OBJECT_DELIMITER_REGEX = "^<[a-zA-Z][a-zA-Z0-9_]*>$";
+    private static final Pattern CHARACTER_LITERAL_PATTERN = Pattern.compile("^'([^'\\\\]|\\\\.)*'$");
 
-    // Number Literals: Integers and Floats
-    private static final String INTEGER_REGEX = "^[-+]?\\d+$";
-    private static final String FLOAT_REGEX = "^[-+]?\\d*\\.\\d+([eE][-+]?\\d+)?$";
+    // Float Literals: optional sign, optional integer part, fraction and optional exponent
+    private static final Pattern FLOAT_PATTERN = Pattern.compile("^[-+]?\\d*\\.\\d+([eE][-+]?\\d+)?$");
 
     // Complex Literals: $(real,imag)
-    private static final String COMPLEX_LITERAL_REGEX = 
-                    "^\\$\\(\\s*[-+]?\\d*\\.?\\d+\\s*,\\s*[-+]?\\d*\\.?\\d+\\s*\\)$";
+    private static final Pattern COMPLEX_LITERAL_PATTERN = 
+                    Pattern.compile("^\\$\\(\\s*[-+]?\\d*\\.?\\d+\\s*,\\s*[-+]?\\d*\\.?\\d+\\s*\\)$");
 
     // Fraction Literals: [numerator|denominator]
-    private static final String FRACTION_LITERAL_REGEX = "^\\[\\d+\\|[1-9]\\d*]$";
+    private static final Pattern FRACTION_LITERAL_PATTERN = Pattern.compile("^\\[\\d+\\|[1-9]\\d*]$");
 
     // Date Literals: [YYYY|MM|DD]
-    private static final String DATE_LITERAL_REGEX = "^\\[\\d{4}\\|\\d{2}\\|\\d{2}]$";
+    private static final Pattern DATE_LITERAL_PATTERN = Pattern.compile("^\\[\\d{4}\\|\\d{2}\\|\\d{2}]$");
 
     // Methods for Matching
+
+    // Identifiers: Starts with a letter, followed by letters, digits, or underscores
     public static boolean matchIdentifier(String input) {
-        return input != null && input.matches(IDENTIFIER_REGEX);
+        return input != null && isIdentifier(input, 0, input.length());
     }
 
+    public static boolean matchIdentifier(char[] chars, int start, int length) {
+        if (length <= 0 || !isAsciiLetter(chars[start])) return false;
+        for (int i = start + 1; i < start + length; i++) {
+            char c = chars[i];
+            if (!isAsciiLetter(c) && !isAsciiDigit(c) && c != '_') return false;
+        }
+        return true;
+    }
+
+    // Assignment Operators: =, +=, -=, *=, /=, %=, ?=
     public static boolean matchAssignOp(String input) {
-        return input != null && input.matches(ASSIGN_OP_REGEX);
+        if (input == null) return false;
+        return switch (input) {
+            case "=", "+=", "-=", "*=", "/=", "%=", "?=" -> true;
+            default -> false;
+        };
     }
 
+    // Arithmetic Operators: +, -, *, /, %, ^
     public static boolean matchArithmeticOp(String input) {
-        return input != null && input.matches(ARITHMETIC_OP_REGEX);
+        if (input == null) return false;
+        return switch (input) {
+            case "+", "-", "*", "/", "%", "^" -> true;
+            default -> false;
+        };
     }
 
+    // Logical Operators: ||, &&, !
     public static boolean matchLogicalOp(String input) {
-        return input != null && input.matches(LOGICAL_OP_REGEX);
+        if (input == null) return false;
+        return switch (input) {
+            case "||", "&&", "!" -> true;
+            default -> false;
+        };
     }
 
+    // Relational Operators: ==, !=, <, >, <=, >=
     public static boolean matchRelationalOp(String input) {
-        return input != null && input.matches(RELATIONAL_OP_REGEX);
+        if (input == null) return false;
+        return switch (input) {
+            case "==", "!=", "<=", ">=", "<", ">" -> true;
+            default -> false;
+        };
     }
 
+    // Bitwise Operators: &, |, ^|, ~, <<, >>, >>>
     public static boolean matchBitwiseOp(String input) {
-        return input != null && input.matches(BITWISE_OP_REGEX);
+        if (input == null) return false;
+        return switch (input) {
+            case ">>>", ">>", "<<", "^|", "&", "|", "^", "~" -> true;
+            default -> false;
+        };
     }
 
+    // Unary Operators: +, -, ++, --, **, !
     public static boolean matchUnaryOp(String input) {
-        return input != null && input.matches(UNARY_OP_REGEX);
+        if (input == null) return false;
+        return switch (input) {
+            case "+", "-", "++", "--", "**", "!" -> true;
+            default -> false;
+        };
     }
 
+    // Ternary Operator: ? : (with optional whitespace around the colon)
     public static boolean matchTernaryOp(String input) {
-        return input != null && input.matches(TERNARY_OP_REGEX);
+        if (input == null || input.isEmpty() || input.charAt(0) != '?') return false;
+        int i = skipRegexWhitespace(input, 1);
+        if (i >= input.length() || input.charAt(i) != ':') return false;
+        return skipRegexWhitespace(input, i + 1) == input.length();
     }
 
+    // Method Reference Operators: ., ::, ->
     public static boolean matchMethodOp(String input) {
-        return input != null && input.matches(METHOD_OP_REGEX);
+        if (input == null) return false;
+        return switch (input) {
+            case "->", "::", "." -> true;
+            default -> false;
+        };
     }
 
+    // Inherit Operators: :>, :>>
     public static boolean matchInheritOp(String input) {
-        return input != null && input.matches(INHERIT_OP_REGEX);
+        if (input == null) return false;
+        return switch (input) {
+            case ":>", ":>>" -> true;
+            default -> false;
+        };
     }
 
+    // Loop Operators: .., ...
     public static boolean matchLoopOp(String input) {
-        return input != null && input.matches(LOOP_OP_REGEX);
+        if (input == null) return false;
+        return switch (input) {
+            case "..", "..." -> true;
+            default -> false;
+        };
     }
 
     public static boolean isKeyword(String input) {
-        return input != null && input.matches(KEYWORDS_REGEX);
+        return input != null && SpecialWords.classify(input) == WordType.KEYWORD;
     }
 
     public static boolean isReservedWord(String input) {
-        return input != null && input.matches(RESERVED_WORDS_REGEX);
+        return input != null && SpecialWords.classify(input) == WordType.RESERVED;
     }
 
+    // Single-Line Comments: Starts with // and runs to the end of the line
     public static boolean isSingleLineComment(String input) {
-        return input != null && input.matches(SINGLE_LINE_COMMENT_REGEX);
+        return input != null && input.startsWith("//") && input.indexOf('\n', 2) == -1;
     }
 
+    // Delimiters and Brackets: (), {}, [], ,, ;, :, @, .
     public static boolean matchDelimiterOrBracket(String input) {
-        return input != null && input.matches(DELIMITERS_REGEX);
+        if (input == null || input.length() != 1) return false;
+        return switch (input.charAt(0)) {
+            case '(', ')', '{', '}', '[', ']', ',', ';', ':', '@', '.' -> true;
+            default -> false;
+        };
     }
 
     public static boolean matchStringLiteral(String input) {
-        return input != null && input.matches(STRING_LITERAL_REGEX);
+        return input != null && STRING_LITERAL_PATTERN.matcher(input).matches();
     }
 
     public static boolean matchCharacterLiteral(String input) {
-        return input != null && input.matches(CHARACTER_LITERAL_REGEX);
+        return input != null && CHARACTER_LITERAL_PATTERN.matcher(input).matches();
     }
 
+    // Object Delimiters: an identifier enclosed in <>
     public static boolean matchObjectDelimiter(String input) {
-        return input != null && input.matches(OBJECT_DELIMITER_REGEX);
+        if (input == null || input.length() < 3) return false;
+        int last = input.length() - 1;
+        return input.charAt(0) == '<' && input.charAt(last) == '>' && isIdentifier(input, 1, last);
     }
 
+    // Integer Literals: optional sign followed by digits
     public static boolean matchInteger(String input) {
-        return input != null && input.matches(INTEGER_REGEX);
+        if (input == null) return false;
+        int start = !input.isEmpty() && (input.charAt(0) == '-' || input.charAt(0) == '+') ? 1 : 0;
+        if (start == input.length()) return false;
+        for (int i = start; i < input.length(); i++) {
+            if (!isAsciiDigit(input.charAt(i))) return false;
+        }
+        return true;
     }
     
     public static boolean matchFloat(String input) {
-        return input != null && input.matches(FLOAT_REGEX);
+        return input != null && FLOAT_PATTERN.matcher(input).matches();
     }
 
     public static boolean matchComplexLiteral(String input) {
-        return input != null && input.matches(COMPLEX_LITERAL_REGEX);
+        return input != null && COMPLEX_LITERAL_PATTERN.matcher(input).matches();
     }
 
     public static boolean matchFractionLiteral(String input) {
-        return input != null && input.matches(FRACTION_LITERAL_REGEX);
+        return input != null && FRACTION_LITERAL_PATTERN.matcher(input).matches();
     }
 
     public static boolean matchDateLiteral(String input) {
-        return input != null && input.matches(DATE_LITERAL_REGEX);
+        return input != null && DATE_LITERAL_PATTERN.matcher(input).matches();
+    }
+
+    // Character class helpers (ASCII only, like [a-zA-Z] and \d in the regexes)
+
+    private static boolean isIdentifier(String input, int start, int end) {
+        if (start >= end || !isAsciiLetter(input.charAt(start))) return false;
+        for (int i = start + 1; i < end; i++) {
+            char c = input.charAt(i);
+            if (!isAsciiLetter(c) && !isAsciiDigit(c) && c != '_') return false;
+        }
+        return true;
+    }
+
+    private static boolean isAsciiLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static boolean isAsciiDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    // Skips the characters matched by \s: space, \t, \n, \x0B, \f and \r
+    private static int skipRegexWhitespace(String input, int index) {
+        while (index < input.length()) {
+            char c = input.charAt(index);
+            if (c != ' ' && c != '\t' && c != '\n' && c != '\u000B' && c != '\f' && c != '\r') break;
+            index++;
+        }
+        return index;
     }
 }
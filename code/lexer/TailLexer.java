@@ -0,0 +1,237 @@
+package lexer;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+import util.EnumCounter;
+import util.ErrorHandler;
+import util.SourceBuffer;
+import util.SourceReader;
+import util.ErrorHandler.ErrorType;
+import util.ErrorHandler.LexicalError;
+import util.SourceReader.SourceReaderException;
+
+/**
+ * Lexer for sources that keep growing while they are written, such as
+ * generated scripts. Each run starts where the previous one stopped, as
+ * recorded in a {@link TailState}, and lexes only the text appended since.
+ *
+ * A run stops at the last top-level token boundary that is at least one
+ * lookahead window before the end of the input, and whose previous token is
+ * not whitespace. Nothing lexed before that point could have seen the end of
+ * the input, so its tokens and errors are final. The tokens from there on,
+ * including a string or comment that is still open, are left for the next
+ * run, and no EOF token is added. Byte offsets are derived by encoding the
+ * lexed text, so they are exact for files that decode without errors.
+ *
+ * Once the file is complete, a last run lexes everything up to the end of
+ * the input, reporting a string or comment left open as a full run would,
+ * adds the EOF token and stops at the end of the file.
+ */
+public class TailLexer extends Lexer {
+    // Restart points are promoted once they are this far behind the read position
+    private static final int SAFE_DISTANCE = SourceReader.LOOKAHEAD_CAPACITY;
+
+    // Restart points still within SAFE_DISTANCE of the read position; one per character at most
+    private static final int PENDING_CAPACITY = SAFE_DISTANCE * 2;
+
+    private final SourceReader reader;
+    private final TriviaMode triviaMode;
+    private final TriviaChannel trivia;
+    private final TailState start;
+    private final boolean last;
+    private TailState state;
+
+    // The stream returned by tokenize(), once it has run
+    private TokenStream tokenized;
+
+    /**
+     * Constructs a TailLexer that continues from a saved state.
+     *
+     * @param reader A reader opened by {@link TailState#openReader}.
+     * @param triviaMode Where whitespace and comment tokens are sent.
+     * @param state Where the previous run stopped.
+     */
+    public TailLexer(SourceReader reader, TriviaMode triviaMode, TailState state) {
+        this(reader, triviaMode, state, false);
+    }
+
+    /**
+     * Constructs a TailLexer that continues from a saved state.
+     *
+     * @param reader A reader opened by {@link TailState#openReader}.
+     * @param triviaMode Where whitespace and comment tokens are sent.
+     * @param state Where the previous run stopped.
+     * @param last Whether the file is complete, so that this run lexes up to
+     *             its end and adds the EOF token.
+     */
+    public TailLexer(SourceReader reader, TriviaMode triviaMode, TailState state, boolean last) {
+        super(reader, triviaMode);
+        this.reader = reader;
+        this.triviaMode = triviaMode;
+        this.trivia = new TriviaChannel(reader.getSource());
+        this.start = state;
+        this.last = last;
+        this.state = state;
+    }
+
+    @Override
+    public TriviaChannel getTrivia() {
+        return trivia;
+    }
+
+    /**
+     * Returns the number of tokens of each type in the stream returned by
+     * {@link #tokenize()} and in the trivia channel. The counts are only
+     * there once tokenize() has returned.
+     *
+     * @return A new counter holding the counts.
+     */
+    @Override
+    public EnumCounter<TokenType> getTokenCounts() {
+        return countTokens(tokenized == null ? new TokenStream(reader.getSource()) : tokenized);
+    }
+
+    /**
+     * Returns where this run stopped, to be saved for the next run.
+     * Before {@link #tokenize()} it is the state the lexer started from.
+     *
+     * @return The state to resume from.
+     */
+    public TailState getState() {
+        return state;
+    }
+
+    /**
+     * Tokenizes the text appended since the previous run, up to the last point
+     * that is known to be final, or up to the end of the input on the last run.
+     *
+     * @return The stream of tokens lexed in this run, ending with an EOF token
+     *         only on the last run.
+     */
+    @Override
+    public TokenStream tokenize() {
+        SourceBuffer text = reader.getSource();
+        TokenStream lexed = new TokenStream(text);
+        ErrorHandler pending = new ErrorHandler(false);
+        Lexer lexer = new Lexer(reader, lexed, pending);
+        lexer.resumeAfter(start.getPreviousType(), start.getPreviousClosesGroup());
+
+        // Restart points that may still depend on the end of the input, as a ring buffer
+        int[] offsets = new int[PENDING_CAPACITY];
+        int[] tokenCounts = new int[PENDING_CAPACITY];
+        int[] errorCounts = new int[PENDING_CAPACITY];
+        int[] lines = new int[PENDING_CAPACITY];
+        int[] columns = new int[PENDING_CAPACITY];
+        int first = 0;
+        int count = 0;
+
+        // The last restart point known to be final
+        int safeOffset = start.getOffset();
+        int safeTokens = 0;
+        int safeErrors = 0;
+        int safeLine = start.getLine();
+        int safeColumn = start.getColumn();
+
+        try {
+            boolean more = true;
+            while (more) {
+                int last = lexed.size() - 1;
+                if ((last < 0 || lexed.type(last) != TokenType.WHITESPACE)
+                        && !Character.isLowSurrogate(reader.peek())) {
+                    int slot = (first + count) % PENDING_CAPACITY;
+                    offsets[slot] = reader.getOffset();
+                    tokenCounts[slot] = lexed.size();
+                    errorCounts[slot] = pending.getErrorCount();
+                    lines[slot] = reader.getLine();
+                    columns[slot] = reader.getColumn();
+                    count++;
+                }
+
+                more = lexer.step();
+                int limit = more ? reader.getOffset() : reader.getOffset() + 1;
+                while (count > 0 && offsets[first] + SAFE_DISTANCE < limit) {
+                    safeOffset = offsets[first];
+                    safeTokens = tokenCounts[first];
+                    safeErrors = errorCounts[first];
+                    safeLine = lines[first];
+                    safeColumn = columns[first];
+                    first = (first + 1) % PENDING_CAPACITY;
+                    count--;
+                }
+            }
+        } catch (SourceReaderException e) {
+            getErrorHandler().reportError(
+                ErrorType.FILE_ERROR,
+                "Error reading source file: " + e.getMessage(),
+                reader.getLine(),
+                reader.getColumn()
+            );
+            tokenized = new TokenStream(text);
+            return tokenized;
+        }
+
+        if (last) {
+            // Nothing more will be appended, so everything lexed is final
+            safeOffset = reader.getOffset();
+            safeTokens = lexed.size();
+            safeErrors = pending.getErrorCount();
+            safeLine = reader.getLine();
+            safeColumn = reader.getColumn();
+        }
+
+        // Keep what is final and report its errors
+        lexed.truncate(safeTokens);
+        for (LexicalError error : pending.getErrors().subList(0, safeErrors)) {
+            getErrorHandler().reportError(error.getType(), error.getMessage(),
+                error.getLine(), error.getColumn(), error.getSuggestion());
+        }
+
+        TokenType previousType = start.getPreviousType();
+        boolean previousClosesGroup = start.getPreviousClosesGroup();
+        if (safeTokens > 0) {
+            previousType = lexed.type(safeTokens - 1);
+            previousClosesGroup = lexed.lexemeEquals(safeTokens - 1, ")") || lexed.lexemeEquals(safeTokens - 1, "]");
+        }
+        long byteOffset = start.getByteOffset() + encodedLength(text, start.getOffset(), safeOffset);
+        state = new TailState(start.getCharset(), byteOffset, safeOffset, safeLine, safeColumn,
+            previousType, previousClosesGroup);
+        if (last) {
+            lexed.add(TokenType.EOF, "", safeLine, safeColumn);
+        }
+
+        tokenized = switch (triviaMode) {
+            case INLINE -> lexed;
+            case CHANNEL -> trivia.split(lexed);
+            case DROP -> lexed.filter(type -> type != TokenType.WHITESPACE && type != TokenType.COMMENT);
+        };
+        return tokenized;
+    }
+
+    /**
+     * Returns the number of bytes the text between two offsets takes in the charset of the file.
+     */
+    private long encodedLength(CharSequence text, int from, int to) {
+        CharsetEncoder encoder = start.getCharset().newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        CharBuffer input = CharBuffer.wrap(text, from, to);
+        ByteBuffer output = ByteBuffer.allocate(8192);
+        long length = 0;
+        CoderResult result;
+        do {
+            result = encoder.encode(input, output, true);
+            length += output.position();
+            output.clear();
+        } while (result.isOverflow());
+        do {
+            result = encoder.flush(output);
+            length += output.position();
+            output.clear();
+        } while (result.isOverflow());
+        return length;
+    }
+}
@@ -0,0 +1,143 @@
+package lexer;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+
+import util.SourceReader;
+import util.SourceReader.SourceReaderException;
+
+/**
+ * Where a {@link TailLexer} stopped in a file that is still being appended to.
+ *
+ * The position is always the start of a top-level token, so a string or block
+ * comment that was still open at the end of the input is re-read from its
+ * opening delimiter on the next run rather than resumed half way. Along with
+ * the position, the state keeps the last token before it, which is all that
+ * isUnaryContext needs from the text already lexed.
+ *
+ * After the last run of a file that is complete, the state is the end of the
+ * file, past the EOF token that run added. Text appended after that is lexed
+ * by a later run as if the file had never ended.
+ */
+public class TailState {
+    private final Charset charset;
+    private final long byteOffset;
+    private final int offset;
+    private final int line;
+    private final int column;
+    private final TokenType previousType;
+    private final boolean previousClosesGroup;
+
+    /**
+     * Constructs the state for a file that has not been lexed yet.
+     *
+     * @param charset The charset of the file.
+     */
+    public TailState(Charset charset) {
+        this(charset, 0, 0, 1, 0, null, false);
+    }
+
+    TailState(Charset charset, long byteOffset, int offset, int line, int column,
+              TokenType previousType, boolean previousClosesGroup) {
+        this.charset = charset;
+        this.byteOffset = byteOffset;
+        this.offset = offset;
+        this.line = line;
+        this.column = column;
+        this.previousType = previousType;
+        this.previousClosesGroup = previousClosesGroup;
+    }
+
+    /**
+     * Opens a reader over the file positioned where lexing stopped.
+     *
+     * @param filePath The path of the file.
+     * @return A reader that starts at the saved position.
+     * @throws SourceReaderException If the file cannot be opened there.
+     */
+    public SourceReader openReader(String filePath) throws SourceReaderException {
+        return new SourceReader(filePath, charset, byteOffset, offset, line, column);
+    }
+
+    /**
+     * Writes the state to a properties file.
+     *
+     * @param path The file to write.
+     * @throws IOException If the file cannot be written.
+     */
+    public void save(Path path) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("charset", charset.name());
+        properties.setProperty("byteOffset", Long.toString(byteOffset));
+        properties.setProperty("offset", Integer.toString(offset));
+        properties.setProperty("line", Integer.toString(line));
+        properties.setProperty("column", Integer.toString(column));
+        properties.setProperty("previousType", previousType == null ? "" : previousType.name());
+        properties.setProperty("previousClosesGroup", Boolean.toString(previousClosesGroup));
+        try (Writer writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            properties.store(writer, "X-presso tail lexing state");
+        }
+    }
+
+    /**
+     * Reads a state written by {@link #save}.
+     *
+     * @param path The file to read.
+     * @return The saved state.
+     * @throws IOException If the file cannot be read or is not a valid state file.
+     */
+    public static TailState load(Path path) throws IOException {
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+        try {
+            String previousType = properties.getProperty("previousType", "");
+            return new TailState(
+                Charset.forName(properties.getProperty("charset")),
+                Long.parseLong(properties.getProperty("byteOffset")),
+                Integer.parseInt(properties.getProperty("offset")),
+                Integer.parseInt(properties.getProperty("line")),
+                Integer.parseInt(properties.getProperty("column")),
+                previousType.isEmpty() ? null : TokenType.valueOf(previousType),
+                Boolean.parseBoolean(properties.getProperty("previousClosesGroup"))
+            );
+        } catch (RuntimeException e) {
+            throw new IOException("Invalid tail state file: " + path, e);
+        }
+    }
+
+    public Charset getCharset() {
+        return charset;
+    }
+
+    public long getByteOffset() {
+        return byteOffset;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public int getLine() {
+        return line;
+    }
+
+    public int getColumn() {
+        return column;
+    }
+
+    public TokenType getPreviousType() {
+        return previousType;
+    }
+
+    public boolean getPreviousClosesGroup() {
+        return previousClosesGroup;
+    }
+}
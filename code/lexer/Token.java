@@ -3,10 +3,15 @@ package lexer;
 /**
  * Represents a lexical token produced by the Lexer.
  * Each token has a type, value, and its position in the source code.
+ * The value is either given directly or taken lazily from a range of the
+ * shared source text, so lexemes that are never read are never copied.
  */
 public class Token {
     private final TokenType type;  // The type of the token (e.g., IDENTIFIER, KEYWORD)
-    private final String lexeme;   // The actual value of the token
+    private String lexeme;         // The actual value of the token, null until materialized
+    private final CharSequence source; // Source text holding the lexeme, or null
+    private final int offset;     // Offset of the lexeme in the source text
+    private final int length;     // Length of the lexeme in the source text
     private final int line;       // Line number where the token was found
     private final int column;     // Column number where the token starts
 
@@ -21,6 +26,30 @@ public class Token {
      public Token(TokenType type, String lexeme, int line, int column) {
           this.type = type;
           this.lexeme = lexeme;
+          this.source = null;
+          this.offset = 0;
+          this.length = lexeme.length();
+          this.line = line;
+          this.column = column;
+     }
+
+     /**
+          * Constructs a Token whose lexeme is a range of the source text.
+          * The lexeme String is only created when {@link #getLexeme()} is called.
+          *
+          * @param type   the type of the token
+          * @param source the source text containing the lexeme
+          * @param offset the offset of the lexeme in the source text
+          * @param length the length of the lexeme
+          * @param line   the line number of the token
+          * @param column the column number of the token
+          */
+     public Token(TokenType type, CharSequence source, int offset, int length, int line, int column) {
+          this.type = type;
+          this.lexeme = null;
+          this.source = source;
+          this.offset = offset;
+          this.length = length;
           this.line = line;
           this.column = column;
      }
@@ -30,9 +59,19 @@ public class Token {
      }
 
      public String getLexeme() {
+          if (this.lexeme == null) {
+               this.lexeme = source.subSequence(offset, offset + length).toString();
+          }
           return this.lexeme;
      }
 
+     /**
+          * Returns the length of the lexeme without materializing it.
+          */
+     public int getLength() {
+          return this.length;
+     }
+
      public int getLine() {
           return this.line;
      }
@@ -49,7 +88,7 @@ public class Token {
           */
      @Override
      public String toString() {
-          String sanitizedLexeme = lexeme.replace("\n", "\\n").replace("\r", "");
+          String sanitizedLexeme = getLexeme().replace("\n", "\\n").replace("\r", "");
           return String.format("%-20s %-15s Line: %-3d Column: %-3d",
                                    type, sanitizedLexeme, line, column);
      }
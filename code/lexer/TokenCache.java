@@ -0,0 +1,261 @@
+package lexer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import util.ErrorHandler.ErrorType;
+import util.ErrorHandler.LexicalError;
+
+/**
+ * On-disk cache of lexing results, so that a file whose contents have not
+ * changed is not lexed again. Entries are keyed by a SHA-256 hash of the
+ * source bytes and {@link Lexer#VERSION}, and hold the significant tokens, the
+ * trivia channel and the lexical errors of one source.
+ *
+ * Each entry is a file in the cache directory. Reading an entry refreshes its
+ * modification time, and whenever an entry is stored the least recently used
+ * entries are deleted until the directory is back within its size limit.
+ * Entries are written to a temporary file and moved into place, so runs that
+ * share the directory never read a partly written entry.
+ */
+public class TokenCache {
+    public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+    private static final int MAGIC = 0x58504354;  // "XPCT"
+    private static final String SUFFIX = ".tokens";
+
+    private final Path directory;
+    private final long maxBytes;
+
+    /**
+     * Result of lexing one source, as stored in the cache.
+     */
+    public static class Entry {
+        private final TokenStream tokens;
+        private final TriviaChannel trivia;
+        private final List<LexicalError> errors;
+
+        private Entry(TokenStream tokens, TriviaChannel trivia, List<LexicalError> errors) {
+            this.tokens = tokens;
+            this.trivia = trivia;
+            this.errors = errors;
+        }
+
+        public TokenStream getTokens() {
+            return tokens;
+        }
+
+        public TriviaChannel getTrivia() {
+            return trivia;
+        }
+
+        public List<LexicalError> getErrors() {
+            return errors;
+        }
+    }
+
+    /**
+     * Constructs a TokenCache over the given directory, creating it if needed.
+     *
+     * @param directory The directory holding the entries.
+     * @param maxBytes The total size of the entries above which old ones are deleted.
+     * @throws IOException If the directory cannot be created.
+     */
+    public TokenCache(Path directory, long maxBytes) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Computes the cache key of a file from its bytes and the lexer version.
+     *
+     * @param file The source file.
+     * @return The key, as a hexadecimal string.
+     * @throws IOException If the file cannot be read.
+     */
+    public static String key(Path file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+        digest.update(ByteBuffer.allocate(Integer.BYTES).putInt(Lexer.VERSION).array());
+        try (InputStream in = Files.newInputStream(file)) {
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Looks up the result for a file. The tokens of a cached result refer to
+     * the text of the file, which is read again to serve as their source.
+     *
+     * @param key The key of the file, from {@link #key}.
+     * @param file The source file.
+     * @return The cached result, or null if there is none or it cannot be read.
+     * @throws IOException If the source file cannot be read.
+     */
+    public Entry get(String key, Path file) throws IOException {
+        Path entryPath = directory.resolve(key + SUFFIX);
+        if (!Files.exists(entryPath)) {
+            return null;
+        }
+        String source = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(entryPath)))) {
+            if (in.readInt() != MAGIC || in.readInt() != Lexer.VERSION || in.readInt() != source.length()) {
+                throw new IOException("Stale cache entry");
+            }
+            TokenStream tokens = TokenStream.read(in, source);
+            TriviaChannel trivia = TriviaChannel.read(in, source);
+
+            ErrorType[] errorTypes = ErrorType.values();
+            int errorCount = in.readInt();
+            List<LexicalError> errors = new ArrayList<>();
+            for (int i = 0; i < errorCount; i++) {
+                int type = in.readInt();
+                if (type < 0 || type >= errorTypes.length) {
+                    throw new IOException("Invalid error type " + type);
+                }
+                errors.add(new LexicalError(errorTypes[type], readString(in),
+                    in.readInt(), in.readInt(), readString(in)));
+            }
+
+            Files.setLastModifiedTime(entryPath, FileTime.fromMillis(System.currentTimeMillis()));
+            return new Entry(tokens, trivia, errors);
+        } catch (NoSuchFileException e) {
+            // Evicted by another run in the meantime
+            return null;
+        } catch (IOException e) {
+            // Damaged or from another version; it is replaced by the next put
+            Files.deleteIfExists(entryPath);
+            return null;
+        }
+    }
+
+    /**
+     * Stores the result of lexing a file, then evicts the least recently used
+     * entries if the cache has grown past its size limit. Results of a file
+     * that could not be read completely are not stored.
+     *
+     * @param key The key of the file, from {@link #key}.
+     * @param tokens The significant tokens.
+     * @param trivia The whitespace and comment tokens.
+     * @param errors The lexical errors.
+     * @throws IOException If the entry cannot be written.
+     */
+    public void put(String key, TokenStream tokens, TriviaChannel trivia, List<LexicalError> errors)
+            throws IOException {
+        if (errors.stream().anyMatch(error -> error.getType() == ErrorType.FILE_ERROR)) {
+            return;
+        }
+
+        Path temporary = Files.createTempFile(directory, key, ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(Lexer.VERSION);
+                out.writeInt(tokens.source().length());
+                tokens.write(out);
+                trivia.write(out);
+                out.writeInt(errors.size());
+                for (LexicalError error : errors) {
+                    out.writeInt(error.getType().ordinal());
+                    writeString(out, error.getMessage());
+                    out.writeInt(error.getLine());
+                    out.writeInt(error.getColumn());
+                    writeString(out, error.getSuggestion());
+                }
+            }
+            Files.move(temporary, directory.resolve(key + SUFFIX),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+        evict();
+    }
+
+    /**
+     * Deletes the least recently used entries until the total size of the
+     * entries is within the limit.
+     */
+    private void evict() throws IOException {
+        List<Path> entries;
+        try (Stream<Path> files = Files.list(directory)) {
+            entries = files.filter(path -> path.toString().endsWith(SUFFIX)).collect(Collectors.toList());
+        }
+
+        Map<Path, BasicFileAttributes> attributes = new HashMap<>();
+        long total = 0;
+        for (Path entry : entries) {
+            try {
+                BasicFileAttributes attribute = Files.readAttributes(entry, BasicFileAttributes.class);
+                attributes.put(entry, attribute);
+                total += attribute.size();
+            } catch (NoSuchFileException e) {
+                // Deleted by another run
+            }
+        }
+        if (total <= maxBytes) {
+            return;
+        }
+
+        List<Path> leastRecentFirst = new ArrayList<>(attributes.keySet());
+        leastRecentFirst.sort(Comparator.comparing(entry -> attributes.get(entry).lastModifiedTime()));
+        for (Path entry : leastRecentFirst) {
+            if (total <= maxBytes) {
+                break;
+            }
+            Files.deleteIfExists(entry);
+            total -= attributes.get(entry).size();
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,180 @@
+package lexer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * Reads a token file written by {@link TokenFileWriter} through a memory
+ * mapping. Nothing is decoded up front: token N is found through the block
+ * index, and only the records of its block before it are decoded. Lexemes
+ * are decoded from the string table when they are asked for.
+ *
+ * The List view creates Token objects on demand, like {@link TokenStream}.
+ */
+public class TokenFileReader extends AbstractList<Token> implements RandomAccess {
+    private static final TokenType[] TYPES = TokenType.values();
+    private static final int INDEX_ENTRY_SIZE = 3 * Integer.BYTES;
+
+    private final ByteBuffer buffer;
+    private final int size;
+    private final int lexemeCount;
+    private final int recordStart;
+    private final int indexStart;
+
+    /**
+     * Maps a token file and checks its header.
+     *
+     * @param path The token file.
+     * @throws IOException If the file cannot be mapped or is not a token file.
+     */
+    public TokenFileReader(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < TokenFileWriter.HEADER_SIZE || channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Not a token file: " + path);
+            }
+            // The mapping stays valid after the channel is closed
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        if (buffer.getInt(0) != TokenFileWriter.MAGIC) {
+            throw new IOException("Not a token file: " + path);
+        }
+        if (buffer.getInt(4) != TokenFileWriter.FORMAT_VERSION) {
+            throw new IOException("Unsupported token file version " + buffer.getInt(4) + ": " + path);
+        }
+        size = buffer.getInt(8);
+        lexemeCount = buffer.getInt(12);
+        recordStart = buffer.getInt(20);
+        indexStart = buffer.getInt(24);
+        long blocks = ((long) size + TokenFileWriter.BLOCK_SIZE - 1) / TokenFileWriter.BLOCK_SIZE;
+        if (size < 0 || lexemeCount < 0 || recordStart > indexStart
+                || indexStart + blocks * INDEX_ENTRY_SIZE > buffer.capacity()) {
+            throw new IOException("Damaged token file: " + path);
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    public TokenType type(int index) {
+        return TYPES[buffer.get(seek(index).position) & 0xFF];
+    }
+
+    public int line(int index) {
+        return seek(index).line;
+    }
+
+    public int column(int index) {
+        return seek(index).column;
+    }
+
+    /**
+     * Returns where the lexeme of the token at the given index starts in the
+     * source text it was lexed from.
+     *
+     * @param index the index of the token
+     * @return the offset of the lexeme, or -1 if it was not a slice of the source
+     */
+    public int sourceOffset(int index) {
+        return seek(index).offset - 1;
+    }
+
+    public String lexeme(int index) {
+        return lexemeAt(seek(index).lexeme);
+    }
+
+    @Override
+    public Token get(int index) {
+        Record record = seek(index);
+        return new Token(TYPES[buffer.get(record.position) & 0xFF], lexemeAt(record.lexeme),
+            record.line, record.column);
+    }
+
+    /**
+     * Decoded fields of one record, and the position the record starts at.
+     */
+    private static final class Record {
+        int position;
+        int lexeme;
+        int line;
+        int column;
+        int offset;
+    }
+
+    /**
+     * Decodes the record of the token at the given index, starting from the
+     * first record of its block.
+     */
+    private Record seek(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " outside token file of size " + size);
+        }
+        int entry = indexStart + (index / TokenFileWriter.BLOCK_SIZE) * INDEX_ENTRY_SIZE;
+        Record record = new Record();
+        int position = recordStart + buffer.getInt(entry);
+        record.line = buffer.getInt(entry + 4);
+        record.offset = buffer.getInt(entry + 8);
+
+        for (int skip = index % TokenFileWriter.BLOCK_SIZE; ; skip--) {
+            record.position = position;
+            position++;  // Type byte
+
+            long value = readVarint(position);
+            record.lexeme = (int) value;
+            position = (int) (value >>> 32);
+            value = readVarint(position);
+            record.line += unzigzag((int) value);
+            position = (int) (value >>> 32);
+            value = readVarint(position);
+            record.column = (int) value;
+            position = (int) (value >>> 32);
+            value = readVarint(position);
+            record.offset += unzigzag((int) value);
+            position = (int) (value >>> 32);
+
+            if (skip == 0) {
+                return record;
+            }
+        }
+    }
+
+    /**
+     * Reads a varint, returning its value in the low half and the position
+     * after it in the high half.
+     */
+    private long readVarint(int position) {
+        int value = 0;
+        int shift = 0;
+        byte read;
+        do {
+            read = buffer.get(position++);
+            value |= (read & 0x7F) << shift;
+            shift += 7;
+        } while (read < 0);
+        return ((long) position << 32) | (value & 0xFFFFFFFFL);
+    }
+
+    private String lexemeAt(int lexeme) {
+        if (lexeme < 0 || lexeme >= lexemeCount) {
+            throw new IllegalStateException("Damaged token file: lexeme " + lexeme + " outside string table");
+        }
+        int position = buffer.getInt(TokenFileWriter.HEADER_SIZE + lexeme * Integer.BYTES);
+        long length = readVarint(position);
+        int start = (int) (length >>> 32);
+        byte[] bytes = new byte[(int) length];
+        buffer.get(start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,170 @@
+package lexer;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Writes tokens in the compact binary token file format read by {@link TokenFileReader}.
+ *
+ * A token file holds, in order:
+ * 1. A header: magic number, format version, token count, lexeme count and
+ *    the positions of the sections below, as big-endian ints.
+ * 2. The lexeme string table: one int position per distinct lexeme, then
+ *    the lexemes as UTF-8, each preceded by its length as a varint.
+ * 3. The token records: the type ordinal as one byte, then as varints the
+ *    lexeme number, the line as a zigzag delta from the previous record,
+ *    the column, and the source offset plus one (zero for lexemes that are
+ *    not a slice of the source) as a zigzag delta from the previous record.
+ * 4. The block index: for every {@link #BLOCK_SIZE} records, the position of
+ *    the first one and the line and offset it is a delta from.
+ *
+ * Any token can be found by reading its block index entry and decoding at most
+ * BLOCK_SIZE - 1 records before it.
+ */
+public class TokenFileWriter {
+    static final int MAGIC = 0x5850544B;  // "XPTK"
+    static final int FORMAT_VERSION = 1;
+    static final int HEADER_SIZE = 7 * Integer.BYTES;
+    static final int BLOCK_SIZE = 64;
+
+    private TokenFileWriter() {
+    }
+
+    /**
+     * Writes the tokens whose type is accepted by the filter to a token file.
+     *
+     * @param tokens The tokens to write.
+     * @param include The filter selecting the token types to write.
+     * @param path The file to write.
+     * @throws IOException If the file cannot be written.
+     */
+    public static void write(TokenStream tokens, Predicate<TokenType> include, Path path) throws IOException {
+        Map<String, Integer> lexemeIds = new HashMap<>();
+        List<byte[]> lexemes = new ArrayList<>();
+        ByteSink records = new ByteSink();
+        ByteSink index = new ByteSink();
+
+        int count = 0;
+        int previousLine = 0;
+        int previousOffset = 0;
+        for (int i = 0; i < tokens.size(); i++) {
+            TokenType type = tokens.type(i);
+            if (!include.test(type)) {
+                continue;
+            }
+            if (count % BLOCK_SIZE == 0) {
+                index.writeInt(records.size());
+                index.writeInt(previousLine);
+                index.writeInt(previousOffset);
+            }
+
+            String lexeme = tokens.lexeme(i);
+            Integer id = lexemeIds.get(lexeme);
+            if (id == null) {
+                id = lexemes.size();
+                lexemeIds.put(lexeme, id);
+                lexemes.add(lexeme.getBytes(StandardCharsets.UTF_8));
+            }
+            int line = tokens.line(i);
+            int offset = tokens.sourceOffset(i) + 1;
+
+            records.write(type.ordinal());
+            records.writeVarint(id);
+            records.writeVarint(zigzag(line - previousLine));
+            records.writeVarint(tokens.column(i));
+            records.writeVarint(zigzag(offset - previousOffset));
+            previousLine = line;
+            previousOffset = offset;
+            count++;
+        }
+
+        // Lay out the lexeme table: positions first, then the length-prefixed bytes
+        ByteSink strings = new ByteSink();
+        int[] stringPositions = new int[lexemes.size()];
+        for (int i = 0; i < lexemes.size(); i++) {
+            stringPositions[i] = strings.size();
+            strings.writeVarint(lexemes.get(i).length);
+            strings.write(lexemes.get(i), 0, lexemes.get(i).length);
+        }
+        int stringTable = HEADER_SIZE;
+        int stringData = stringTable + lexemes.size() * Integer.BYTES;
+        int recordStart = stringData + strings.size();
+        int indexStart = recordStart + records.size();
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(count);
+            out.writeInt(lexemes.size());
+            out.writeInt(stringData);
+            out.writeInt(recordStart);
+            out.writeInt(indexStart);
+            for (int position : stringPositions) {
+                out.writeInt(stringData + position);
+            }
+            strings.writeTo(out);
+            records.writeTo(out);
+            index.writeTo(out);
+        }
+    }
+
+    static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    /**
+     * Growable byte array for building the sections of a file in memory.
+     */
+    private static final class ByteSink {
+        private byte[] bytes = new byte[1024];
+        private int size = 0;
+
+        void write(int value) {
+            if (size == bytes.length) {
+                bytes = Arrays.copyOf(bytes, size * 2);
+            }
+            bytes[size++] = (byte) value;
+        }
+
+        void write(byte[] source, int start, int length) {
+            if (size + length > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + length));
+            }
+            System.arraycopy(source, start, bytes, size, length);
+            size += length;
+        }
+
+        void writeInt(int value) {
+            write(value >>> 24);
+            write(value >>> 16);
+            write(value >>> 8);
+            write(value);
+        }
+
+        void writeVarint(int value) {
+            while ((value & ~0x7F) != 0) {
+                write((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            write(value);
+        }
+
+        int size() {
+            return size;
+        }
+
+        void writeTo(DataOutputStream out) throws IOException {
+            out.write(bytes, 0, size);
+        }
+    }
+}
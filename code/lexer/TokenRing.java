@@ -0,0 +1,163 @@
+package lexer;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded queue that hands tokens from one lexer thread to one consumer
+ * thread without locks. The slots are allocated once; the producer and the
+ * consumer each advance their own counter with release writes and read the
+ * other's with acquire reads, and each keeps a cached copy of the other's
+ * counter so that the shared counters are only read when the ring looks full
+ * or empty.
+ *
+ * A full ring makes the producer wait, so a slow consumer holds the lexer
+ * back instead of letting tokens pile up. Waiting spins briefly, then yields,
+ * then parks, so a waiting thread does not take the core from the other one.
+ */
+public class TokenRing {
+    private static final VarHandle HEAD;
+    private static final VarHandle TAIL;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            HEAD = lookup.findVarHandle(TokenRing.class, "head", long.class);
+            TAIL = lookup.findVarHandle(TokenRing.class, "tail", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    // Waiting strategy: spins, then yields, then parks for PARK_NANOS at a time
+    private static final int SPINS = 100;
+    private static final int YIELDS = 100;
+    private static final long PARK_NANOS = 50_000;
+
+    private final Token[] slots;
+    private final int mask;
+
+    // Number of tokens published, written by the producer only
+    private volatile long head;
+    // Number of tokens taken, written by the consumer only
+    private volatile long tail;
+
+    // Each side's last view of the other side's counter
+    private long producerTail;
+    private long consumerHead;
+
+    private volatile boolean closed;
+    private volatile boolean cancelled;
+    private volatile Throwable failure;
+
+    /**
+     * Constructs an empty TokenRing.
+     *
+     * @param capacity The number of slots, a power of two.
+     */
+    public TokenRing(int capacity) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+        }
+        this.slots = new Token[capacity];
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * Publishes a token, waiting while the ring is full. Called by the producer only.
+     *
+     * @param token The token to publish.
+     * @return false if the consumer has stopped, in which case the producer should stop too.
+     */
+    public boolean put(Token token) {
+        long position = head;
+        if (position - producerTail == slots.length) {
+            producerTail = (long) TAIL.getAcquire(this);
+            for (int idle = 0; position - producerTail == slots.length; idle++) {
+                if (cancelled) {
+                    return false;
+                }
+                idle(idle);
+                producerTail = (long) TAIL.getAcquire(this);
+            }
+        }
+        slots[(int) position & mask] = token;
+        HEAD.setRelease(this, position + 1);
+        return !cancelled;
+    }
+
+    /**
+     * Marks the end of the tokens. Called by the producer after its last put.
+     */
+    public void close() {
+        closed = true;
+    }
+
+    /**
+     * Ends the tokens because the producer failed. The consumer sees the end
+     * of the tokens and can then retrieve the failure.
+     *
+     * @param cause The reason the producer stopped.
+     */
+    public void fail(Throwable cause) {
+        failure = cause;
+        closed = true;
+    }
+
+    /**
+     * Takes the next token, waiting while the ring is empty. Called by the consumer only.
+     *
+     * @return The next token, or null once the producer has closed the ring and every token has been taken.
+     */
+    public Token take() {
+        long position = tail;
+        if (position == consumerHead) {
+            consumerHead = (long) HEAD.getAcquire(this);
+            for (int idle = 0; position == consumerHead; idle++) {
+                if (closed) {
+                    // Tokens published before close() are visible once closed is
+                    consumerHead = (long) HEAD.getAcquire(this);
+                    if (position == consumerHead) {
+                        return null;
+                    }
+                    break;
+                }
+                idle(idle);
+                consumerHead = (long) HEAD.getAcquire(this);
+            }
+        }
+        int slot = (int) position & mask;
+        Token token = slots[slot];
+        slots[slot] = null;
+        TAIL.setRelease(this, position + 1);
+        return token;
+    }
+
+    /**
+     * Tells the producer that no more tokens will be taken. Called by the
+     * consumer when it stops, so the producer is not left waiting on a full ring.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Returns why the producer stopped early.
+     *
+     * @return The failure passed to {@link #fail}, or null.
+     */
+    public Throwable getFailure() {
+        return failure;
+    }
+
+    private static void idle(int idle) {
+        if (idle < SPINS) {
+            Thread.onSpinWait();
+        } else if (idle < SPINS + YIELDS) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+    }
+}
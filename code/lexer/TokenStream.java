@@ -0,0 +1,429 @@
+package lexer;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.function.Predicate;
+
+import util.EnumCounter;
+
+/**
+ * Sequence of tokens stored as parallel primitive arrays instead of Token objects.
+ * Each token takes one byte for its type and four ints for its offset, length,
+ * line and column, so large inputs stay compact and are scanned sequentially.
+ * Lexemes are ranges of the shared source text; lexemes that are not (such as
+ * operators rebuilt by the lexer) come from a small pool of constant strings.
+ * Parsers read the stream by index through {@link #type}, {@link #line},
+ * {@link #column} and {@link #lexemeEquals}; the List view creates Token
+ * objects on demand for code that still expects them.
+ *
+ * The number of tokens of each type is kept up to date as tokens are added
+ * and removed, so summaries never have to go over the stream again.
+ */
+public class TokenStream extends AbstractList<Token> implements RandomAccess {
+    private static final TokenType[] TYPES = TokenType.values();
+    private static final int INITIAL_CAPACITY = 256;
+
+    private final CharSequence source;
+    private byte[] types = new byte[INITIAL_CAPACITY];
+    private int[] offsets = new int[INITIAL_CAPACITY];  // Negative offsets index the constant pool
+    private int[] lengths = new int[INITIAL_CAPACITY];
+    private int[] lines = new int[INITIAL_CAPACITY];
+    private int[] columns = new int[INITIAL_CAPACITY];
+    private int size = 0;
+    private final long[] typeCounts = new long[TYPES.length];
+
+    // Pool of lexemes that are not taken from the source text
+    private final List<String> constants;
+    private final Map<String, Integer> constantIds;
+
+    /**
+     * Constructs an empty TokenStream over the given source text.
+     *
+     * @param source the source text that slice lexemes refer to
+     */
+    public TokenStream(CharSequence source) {
+        this(source, new ArrayList<>(), new HashMap<>());
+    }
+
+    private TokenStream(CharSequence source, List<String> constants, Map<String, Integer> constantIds) {
+        this.source = source;
+        this.constants = constants;
+        this.constantIds = constantIds;
+    }
+
+    /**
+     * Appends a token whose lexeme is a range of the source text.
+     *
+     * @param type   the type of the token
+     * @param offset the offset of the lexeme in the source text
+     * @param length the length of the lexeme
+     * @param line   the line number of the token
+     * @param column the column number of the token
+     */
+    public void add(TokenType type, int offset, int length, int line, int column) {
+        if (size == types.length) {
+            grow();
+        }
+        types[size] = (byte) type.ordinal();
+        typeCounts[type.ordinal()]++;
+        offsets[size] = offset;
+        lengths[size] = length;
+        lines[size] = line;
+        columns[size] = column;
+        size++;
+    }
+
+    /**
+     * Appends a token with a constant lexeme. Constant lexemes are pooled, so this
+     * is meant for lexemes drawn from a small fixed set such as operators.
+     *
+     * @param type   the type of the token
+     * @param lexeme the lexeme of the token
+     * @param line   the line number of the token
+     * @param column the column number of the token
+     */
+    public void add(TokenType type, String lexeme, int line, int column) {
+        Integer id = constantIds.get(lexeme);
+        if (id == null) {
+            id = constants.size();
+            constants.add(lexeme);
+            constantIds.put(lexeme, id);
+        }
+        add(type, -1 - id, lexeme.length(), line, column);
+    }
+
+    /**
+     * Appends a copy of a token from another stream.
+     *
+     * @param other the stream holding the token
+     * @param index the index of the token in that stream
+     */
+    public void add(TokenStream other, int index) {
+        add(other, index, 0);
+    }
+
+    /**
+     * Appends a copy of a token from another stream, moving it by a number of lines.
+     *
+     * @param other     the stream holding the token
+     * @param index     the index of the token in that stream
+     * @param lineDelta the number of lines to add to the token's line
+     */
+    public void add(TokenStream other, int index, int lineDelta) {
+        int offset = other.offsets[other.checkIndex(index)];
+        TokenType type = TYPES[other.types[index]];
+        int line = other.lines[index] + lineDelta;
+        if (offset < 0) {
+            add(type, other.constants.get(-1 - offset), line, other.columns[index]);
+        } else {
+            add(type, offset, other.lengths[index], line, other.columns[index]);
+        }
+    }
+
+    /**
+     * Replaces the tokens between from and to with copies of the tokens of
+     * another stream, starting at the given index in that stream.
+     *
+     * @param from            the index of the first token to replace
+     * @param to              the index after the last token to replace
+     * @param replacement     the stream holding the new tokens
+     * @param replacementFrom the index of the first new token in that stream
+     */
+    public void replace(int from, int to, TokenStream replacement, int replacementFrom) {
+        if (from < 0 || to > size || from > to) {
+            throw new IndexOutOfBoundsException("Range [" + from + ", " + to + ") outside stream of size " + size);
+        }
+        uncount(from, to);
+        int count = replacement.size - replacementFrom;
+        int tail = size - to;
+        int newSize = from + count + tail;
+        if (newSize > types.length) {
+            grow(newSize);
+        }
+
+        // Move the tokens after the replaced range into place, then fill the gap
+        System.arraycopy(types, to, types, from + count, tail);
+        System.arraycopy(offsets, to, offsets, from + count, tail);
+        System.arraycopy(lengths, to, lengths, from + count, tail);
+        System.arraycopy(lines, to, lines, from + count, tail);
+        System.arraycopy(columns, to, columns, from + count, tail);
+        size = from;
+        for (int i = replacementFrom; i < replacement.size; i++) {
+            add(replacement, i);
+        }
+        size = newSize;
+    }
+
+    /**
+     * Moves the tokens from the given index onwards after an edit of the source text.
+     *
+     * @param from        the index of the first token to move
+     * @param offsetDelta the number of characters inserted, or minus those removed
+     * @param lineDelta   the number of lines inserted, or minus those removed
+     */
+    public void shift(int from, int offsetDelta, int lineDelta) {
+        for (int i = from; i < size; i++) {
+            if (offsets[i] >= 0) {
+                offsets[i] += offsetDelta;
+            }
+            lines[i] += lineDelta;
+        }
+    }
+
+    private void grow() {
+        grow(types.length * 2);
+    }
+
+    private void grow(int minCapacity) {
+        int capacity = Math.max(types.length * 2, minCapacity);
+        types = Arrays.copyOf(types, capacity);
+        offsets = Arrays.copyOf(offsets, capacity);
+        lengths = Arrays.copyOf(lengths, capacity);
+        lines = Arrays.copyOf(lines, capacity);
+        columns = Arrays.copyOf(columns, capacity);
+    }
+
+    /**
+     * Drops every token from the given index onwards.
+     *
+     * @param newSize the number of tokens to keep
+     */
+    public void truncate(int newSize) {
+        if (newSize < 0 || newSize > size) {
+            throw new IndexOutOfBoundsException("Size " + newSize + " outside stream of size " + size);
+        }
+        uncount(newSize, size);
+        size = newSize;
+    }
+
+    private void uncount(int from, int to) {
+        for (int i = from; i < to; i++) {
+            typeCounts[types[i]]--;
+        }
+    }
+
+    /**
+     * Returns the number of tokens of the given type in the stream.
+     *
+     * @param type the token type to count
+     * @return the number of tokens of that type
+     */
+    public long count(TokenType type) {
+        return typeCounts[type.ordinal()];
+    }
+
+    /**
+     * Adds the number of tokens of each type in the stream to a counter.
+     *
+     * @param counter the counter to add to
+     */
+    public void addCountsTo(EnumCounter<TokenType> counter) {
+        for (int i = 0; i < typeCounts.length; i++) {
+            counter.add(TYPES[i], typeCounts[i]);
+        }
+    }
+
+    /**
+     * Returns the source text that slice lexemes refer to.
+     */
+    public CharSequence source() {
+        return source;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    public TokenType type(int index) {
+        return TYPES[types[checkIndex(index)]];
+    }
+
+    public int line(int index) {
+        return lines[checkIndex(index)];
+    }
+
+    public int column(int index) {
+        return columns[checkIndex(index)];
+    }
+
+    public int length(int index) {
+        return lengths[checkIndex(index)];
+    }
+
+    /**
+     * Returns where the lexeme of the token at the given index starts in the
+     * source text, so it can be read without being copied.
+     *
+     * @param index the index of the token
+     * @return the offset of the lexeme, or -1 if it is a pooled constant
+     */
+    public int sourceOffset(int index) {
+        int offset = offsets[checkIndex(index)];
+        return offset < 0 ? -1 : offset;
+    }
+
+    /**
+     * Returns the lexeme of the token at the given index, copying it out of the
+     * source text if it is a slice.
+     *
+     * @param index the index of the token
+     * @return the lexeme as a String
+     */
+    public String lexeme(int index) {
+        int offset = offsets[checkIndex(index)];
+        if (offset < 0) {
+            return constants.get(-1 - offset);
+        }
+        return source.subSequence(offset, offset + lengths[index]).toString();
+    }
+
+    /**
+     * Compares the lexeme of the token at the given index with a string
+     * without materializing the lexeme.
+     *
+     * @param index the index of the token
+     * @param text  the string to compare with
+     * @return true if the lexeme equals text
+     */
+    public boolean lexemeEquals(int index, String text) {
+        int offset = offsets[checkIndex(index)];
+        if (offset < 0) {
+            return constants.get(-1 - offset).equals(text);
+        }
+        int length = lengths[index];
+        if (length != text.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (source.charAt(offset + i) != text.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether the token at the given index has the given type and lexeme.
+     *
+     * @param index  the index of the token
+     * @param type   the expected type
+     * @param lexeme the expected lexeme
+     * @return true if both match
+     */
+    public boolean is(int index, TokenType type, String lexeme) {
+        return type(index) == type && lexemeEquals(index, lexeme);
+    }
+
+    /**
+     * Creates a Token object for the token at the given index.
+     * Slice lexemes are still materialized lazily by the Token.
+     *
+     * @param index the index of the token
+     * @return the token at that index
+     */
+    @Override
+    public Token get(int index) {
+        int offset = offsets[checkIndex(index)];
+        if (offset < 0) {
+            return new Token(TYPES[types[index]], constants.get(-1 - offset), lines[index], columns[index]);
+        }
+        return new Token(TYPES[types[index]], source, offset, lengths[index], lines[index], columns[index]);
+    }
+
+    /**
+     * Copies the tokens whose type is accepted by the filter into a new stream
+     * sharing the same source text and constant pool.
+     *
+     * @param keep predicate selecting the token types to keep
+     * @return the filtered stream
+     */
+    public TokenStream filter(Predicate<TokenType> keep) {
+        TokenStream filtered = new TokenStream(source, constants, constantIds);
+        for (int i = 0; i < size; i++) {
+            if (keep.test(TYPES[types[i]])) {
+                filtered.add(TYPES[types[i]], offsets[i], lengths[i], lines[i], columns[i]);
+            }
+        }
+        return filtered;
+    }
+
+    /**
+     * Writes the tokens in a binary form that {@link #read} turns back into a
+     * stream over the same source text.
+     *
+     * @param out the output to write to
+     * @throws IOException if the output cannot be written
+     */
+    public void write(DataOutput out) throws IOException {
+        out.writeInt(constants.size());
+        for (String constant : constants) {
+            out.writeUTF(constant);
+        }
+        out.writeInt(size);
+        out.write(types, 0, size);
+        for (int i = 0; i < size; i++) {
+            out.writeInt(offsets[i]);
+            out.writeInt(lengths[i]);
+            out.writeInt(lines[i]);
+            out.writeInt(columns[i]);
+        }
+    }
+
+    /**
+     * Reads tokens written by {@link #write}.
+     *
+     * @param in     the input to read from
+     * @param source the source text the tokens were lexed from
+     * @return the stream of tokens
+     * @throws IOException if the input cannot be read or does not fit the source text
+     */
+    public static TokenStream read(DataInput in, CharSequence source) throws IOException {
+        TokenStream tokens = new TokenStream(source);
+        int constantCount = in.readInt();
+        for (int i = 0; i < constantCount; i++) {
+            String constant = in.readUTF();
+            tokens.constantIds.put(constant, i);
+            tokens.constants.add(constant);
+        }
+
+        int size = in.readInt();
+        if (size < 0) {
+            throw new IOException("Invalid token count " + size);
+        }
+        if (size > tokens.types.length) {
+            tokens.grow(size);
+        }
+        in.readFully(tokens.types, 0, size);
+        for (int i = 0; i < size; i++) {
+            int offset = in.readInt();
+            int length = in.readInt();
+            if (tokens.types[i] < 0 || tokens.types[i] >= TYPES.length
+                    || (offset < 0 ? -1 - offset >= constantCount : length < 0 || offset + length > source.length())) {
+                throw new IOException("Token " + i + " does not fit the source text");
+            }
+            tokens.typeCounts[tokens.types[i]]++;
+            tokens.offsets[i] = offset;
+            tokens.lengths[i] = length;
+            tokens.lines[i] = in.readInt();
+            tokens.columns[i] = in.readInt();
+        }
+        tokens.size = size;
+        return tokens;
+    }
+
+    private int checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " outside stream of size " + size);
+        }
+        return index;
+    }
+}
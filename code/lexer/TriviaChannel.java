@@ -0,0 +1,170 @@
+package lexer;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Side channel for whitespace and comment tokens, kept out of the significant
+ * token stream that the parser reads. Each trivia token records the index of
+ * the significant token it precedes, so the full stream can be rebuilt in its
+ * original order for verbose output.
+ */
+public class TriviaChannel {
+    private final TokenStream tokens;
+    private int[] anchors = new int[64];
+
+    /**
+     * Constructs an empty TriviaChannel over the given source text.
+     *
+     * @param source the source text that trivia lexemes refer to
+     */
+    public TriviaChannel(CharSequence source) {
+        this.tokens = new TokenStream(source);
+    }
+
+    private TriviaChannel(TokenStream tokens, int[] anchors) {
+        this.tokens = tokens;
+        this.anchors = anchors;
+    }
+
+    /**
+     * Appends a trivia token whose lexeme is a range of the source text.
+     *
+     * @param type   the type of the token (WHITESPACE or COMMENT)
+     * @param offset the offset of the lexeme in the source text
+     * @param length the length of the lexeme
+     * @param line   the line number of the token
+     * @param column the column number of the token
+     * @param anchor the index of the significant token that follows it
+     */
+    public void add(TokenType type, int offset, int length, int line, int column, int anchor) {
+        int index = tokens.size();
+        if (index == anchors.length) {
+            anchors = Arrays.copyOf(anchors, index * 2);
+        }
+        anchors[index] = anchor;
+        tokens.add(type, offset, length, line, column);
+    }
+
+    /**
+     * Appends a copy of a trivia token from another stream.
+     *
+     * @param other  the stream holding the token
+     * @param index  the index of the token in that stream
+     * @param anchor the index of the significant token that follows it
+     */
+    public void add(TokenStream other, int index, int anchor) {
+        int position = tokens.size();
+        if (position == anchors.length) {
+            anchors = Arrays.copyOf(anchors, position * 2);
+        }
+        anchors[position] = anchor;
+        tokens.add(other, index);
+    }
+
+    /**
+     * Removes the whitespace tokens at the end of the channel that come after
+     * every significant token, stopping at a comment.
+     *
+     * @param anchor the current number of significant tokens
+     */
+    public void dropTrailingWhitespace(int anchor) {
+        int last = tokens.size() - 1;
+        while (last >= 0 && anchors[last] == anchor && tokens.type(last) == TokenType.WHITESPACE) {
+            tokens.truncate(last);
+            last--;
+        }
+    }
+
+    /**
+     * Returns the trivia tokens in source order.
+     *
+     * @return the stream of trivia tokens
+     */
+    public TokenStream tokens() {
+        return tokens;
+    }
+
+    public int size() {
+        return tokens.size();
+    }
+
+    public int anchor(int index) {
+        return anchors[index];
+    }
+
+    /**
+     * Rebuilds the full token stream by placing each trivia token before the
+     * significant token it was anchored to.
+     *
+     * @param significant the significant tokens produced alongside this channel
+     * @return a new stream holding every token in source order
+     */
+    public TokenStream merge(TokenStream significant) {
+        TokenStream merged = new TokenStream(significant.source());
+        int next = 0;
+        for (int i = 0; i < significant.size(); i++) {
+            while (next < tokens.size() && anchors[next] <= i) {
+                merged.add(tokens, next++);
+            }
+            merged.add(significant, i);
+        }
+        while (next < tokens.size()) {
+            merged.add(tokens, next++);
+        }
+        return merged;
+    }
+
+    /**
+     * Writes the trivia tokens and their anchors in a binary form that
+     * {@link #read} turns back into a channel.
+     *
+     * @param out the output to write to
+     * @throws IOException if the output cannot be written
+     */
+    public void write(DataOutput out) throws IOException {
+        tokens.write(out);
+        for (int i = 0; i < tokens.size(); i++) {
+            out.writeInt(anchors[i]);
+        }
+    }
+
+    /**
+     * Reads a channel written by {@link #write}.
+     *
+     * @param in     the input to read from
+     * @param source the source text the trivia was lexed from
+     * @return the trivia channel
+     * @throws IOException if the input cannot be read or does not fit the source text
+     */
+    public static TriviaChannel read(DataInput in, CharSequence source) throws IOException {
+        TokenStream tokens = TokenStream.read(in, source);
+        int[] anchors = new int[Math.max(64, tokens.size())];
+        for (int i = 0; i < tokens.size(); i++) {
+            anchors[i] = in.readInt();
+        }
+        return new TriviaChannel(tokens, anchors);
+    }
+
+    /**
+     * Moves the whitespace and comments of a stream that holds every token into
+     * this channel, anchored as the lexer would have anchored them.
+     *
+     * @param inline the tokens in source order, trivia included
+     * @return a new stream holding the significant tokens
+     */
+    public TokenStream split(TokenStream inline) {
+        TokenStream significant = new TokenStream(inline.source());
+        for (int i = 0; i < inline.size(); i++) {
+            TokenType type = inline.type(i);
+            if (type == TokenType.WHITESPACE || type == TokenType.COMMENT) {
+                add(inline, i, significant.size());
+            } else {
+                significant.add(inline, i);
+            }
+        }
+        return significant;
+    }
+}
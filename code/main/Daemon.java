@@ -0,0 +1,237 @@
+package main;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import lexer.Lexer;
+import lexer.TokenStream;
+import lexer.TokenType;
+import parser.RDP;
+import util.ErrorHandler;
+import util.SourceReader;
+import util.SyntaxErrorHandler.SyntaxError;
+
+/**
+ * Long-running server that lexes and parses files on request, so that repeated
+ * runs share one warmed-up JVM instead of each paying for class loading, the
+ * static initializers and a cold JIT.
+ *
+ * The server listens on a loopback port, or on a Unix domain socket when the
+ * address is not a number. Each connection carries one request line:
+ *
+ *     lex [--verbose] <file>
+ *     parse [--verbose] <file>
+ *     shutdown
+ *
+ * and is answered with one JSON object before it is closed. The tokens and
+ * errors in the reply have the same shape as the --output=json format.
+ * Relative file paths are resolved against the working directory of the server.
+ */
+public class Daemon {
+    public static final String DEFAULT_ADDRESS = "7431";
+
+    private final String address;
+    private final int workers;
+    private volatile boolean running;
+    private volatile ServerSocketChannel server;
+
+    /**
+     * Constructs a Daemon for the given address.
+     *
+     * @param address A port number on the loopback interface, or the path of a Unix domain socket.
+     * @param workers The number of requests handled at once.
+     */
+    public Daemon(String address, int workers) {
+        this.address = address;
+        this.workers = workers;
+    }
+
+    /**
+     * Resolves an address given on the command line.
+     *
+     * @param address A port number, or the path of a Unix domain socket.
+     * @return The loopback socket address for a port, otherwise the Unix domain socket address.
+     */
+    static SocketAddress resolve(String address) {
+        if (!address.isEmpty() && address.chars().allMatch(Character::isDigit)) {
+            return new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(address));
+        }
+        return UnixDomainSocketAddress.of(address);
+    }
+
+    /**
+     * Accepts and answers requests until a shutdown request is received.
+     *
+     * @throws IOException If the server cannot listen on its address.
+     */
+    public void serve() throws IOException {
+        SocketAddress socketAddress = resolve(address);
+        boolean unix = socketAddress instanceof UnixDomainSocketAddress;
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+
+        try (ServerSocketChannel channel = unix
+                ? ServerSocketChannel.open(StandardProtocolFamily.UNIX)
+                : ServerSocketChannel.open()) {
+            channel.bind(socketAddress);
+            server = channel;
+            running = true;
+            System.out.println("Listening on " + address);
+
+            while (running) {
+                SocketChannel client;
+                try {
+                    client = channel.accept();
+                } catch (ClosedChannelException e) {
+                    // Closed by a shutdown request
+                    break;
+                }
+                pool.execute(() -> handle(client));
+            }
+        } finally {
+            pool.shutdown();
+            if (unix) {
+                Files.deleteIfExists(((UnixDomainSocketAddress) socketAddress).getPath());
+            }
+        }
+        System.out.println("Daemon stopped.");
+    }
+
+    /**
+     * Stops accepting requests. Requests already accepted are still answered.
+     */
+    public void stop() {
+        running = false;
+        try {
+            if (server != null) {
+                server.close();
+            }
+        } catch (IOException e) {
+            System.err.println("Error closing server: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Reads one request from a connection and writes the reply.
+     *
+     * @param client The accepted connection.
+     */
+    private void handle(SocketChannel client) {
+        try (SocketChannel channel = client;
+             BufferedReader in = new BufferedReader(
+                 new InputStreamReader(Channels.newInputStream(channel), StandardCharsets.UTF_8));
+             Writer out = new BufferedWriter(
+                 new OutputStreamWriter(Channels.newOutputStream(channel), StandardCharsets.UTF_8))) {
+            respond(in.readLine(), out);
+            out.write('\n');
+        } catch (IOException e) {
+            System.err.println("Error handling request: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Answers a request line.
+     *
+     * @param request The request, or null if the client sent nothing.
+     * @param out The Writer that receives the JSON reply.
+     * @throws IOException If the reply cannot be written.
+     */
+    void respond(String request, Writer out) throws IOException {
+        if (request == null || request.isBlank()) {
+            out.write(errorReply("Empty request"));
+            return;
+        }
+
+        String[] parts = request.trim().split(" ", 2);
+        String command = parts[0];
+        String file = parts.length > 1 ? parts[1].trim() : "";
+
+        if (command.equals("shutdown")) {
+            stop();
+            out.write("{\n\"status\": \"stopping\"\n}");
+            return;
+        }
+        if (!command.equals("lex") && !command.equals("parse")) {
+            out.write(errorReply("Unknown command: " + command));
+            return;
+        }
+
+        boolean verbose = file.startsWith("--verbose ");
+        if (verbose) {
+            file = file.substring("--verbose ".length()).trim();
+        }
+        if (file.isEmpty()) {
+            out.write(errorReply("No file given"));
+            return;
+        }
+
+        try (SourceReader reader = SourceReader.open(file, StandardCharsets.UTF_8)) {
+            // Lex, and parse if requested, before anything is written
+            Lexer lexer = new Lexer(reader, Lexer.TriviaMode.CHANNEL, new ErrorHandler(false));
+            TokenStream tokens = lexer.tokenize();
+            TokenStream output = verbose ? lexer.getTrivia().merge(tokens) : tokens;
+            List<SyntaxError> syntaxErrors = command.equals("parse") ? new RDP(tokens).check() : null;
+
+            JsonTokenWriter json = new JsonTokenWriter(out);
+            json.write("{\n\"file\": \"");
+            json.writeEscaped(file, 0, file.length());
+            json.write("\",\n\"tokens\": [\n");
+            json.writeTokens(output, type -> verbose || type != TokenType.EOF);
+            json.write("\n],\n");
+            json.write(toJsonArray("errors", lexer.getErrorHandler().getErrors(), Main::errorToJson));
+            if (syntaxErrors != null) {
+                json.write(",\n");
+                json.write(toJsonArray("syntaxErrors", syntaxErrors, Daemon::syntaxErrorToJson));
+            }
+            json.write("\n}");
+            json.flush();
+        } catch (IOException | RuntimeException e) {
+            // Keep serving other requests
+            out.write(errorReply(e.getMessage()));
+        }
+    }
+
+    private static <T> String toJsonArray(String name, List<T> items, Function<T, String> toJson) {
+        return items.stream()
+            .map(toJson)
+            .collect(Collectors.joining(",\n", "\"" + name + "\": [\n", "\n]"));
+    }
+
+    private static String syntaxErrorToJson(SyntaxError error) {
+        return String.format("""
+            {
+                "message": "%s",
+                "line": %d,
+                "column": %d,
+                "suggestion": "%s"
+            }""",
+            Main.escapeJsonString(error.getMessage()),
+            error.getLine(),
+            error.getColumn(),
+            Main.escapeJsonString(error.getSuggestion())
+        );
+    }
+
+    private static String errorReply(String message) {
+        return "{\n\"error\": \"" + Main.escapeJsonString(message) + "\"\n}";
+    }
+}
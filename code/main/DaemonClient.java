@@ -0,0 +1,65 @@
+package main;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+
+/**
+ * Thin client for {@link Daemon}. It only forwards one request and prints the
+ * reply; the lexing and parsing happen in the already warmed-up daemon.
+ *
+ * Usage: DaemonClient [--address=port|socket] lex|parse [--verbose] file
+ *        DaemonClient [--address=port|socket] shutdown
+ */
+public class DaemonClient {
+
+    public static void main(String[] args) {
+        String address = Daemon.DEFAULT_ADDRESS;
+        String command = null;
+        String file = null;
+        boolean verbose = false;
+
+        for (String arg : args) {
+            if (arg.startsWith("--address=")) {
+                address = arg.substring("--address=".length());
+            } else if (arg.equalsIgnoreCase("--verbose")) {
+                verbose = true;
+            } else if (command == null) {
+                command = arg;
+            } else {
+                file = arg;
+            }
+        }
+
+        if (command == null || (file == null && !command.equals("shutdown"))) {
+            System.err.println("Usage: DaemonClient [--address=port|socket] lex|parse [--verbose] file");
+            System.err.println("       DaemonClient [--address=port|socket] shutdown");
+            System.exit(2);
+        }
+
+        // The daemon may run in another directory
+        StringBuilder request = new StringBuilder(command);
+        if (verbose) {
+            request.append(" --verbose");
+        }
+        if (file != null) {
+            request.append(' ').append(Paths.get(file).toAbsolutePath());
+        }
+        request.append('\n');
+
+        try (SocketChannel channel = SocketChannel.open(Daemon.resolve(address))) {
+            channel.write(ByteBuffer.wrap(request.toString().getBytes(StandardCharsets.UTF_8)));
+            channel.shutdownOutput();
+            InputStream reply = Channels.newInputStream(channel);
+            reply.transferTo(System.out);
+            System.out.flush();
+        } catch (IOException e) {
+            System.err.println("Could not reach daemon at " + address + ": " + e.getMessage());
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,296 @@
+package main;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.function.Predicate;
+
+import lexer.Token;
+import lexer.TokenStream;
+import lexer.TokenType;
+import util.ErrorHandler.LexicalError;
+
+/**
+ * Writes tokens as JSON straight from a {@link TokenStream}, in the same
+ * shape as the rest of the JSON output. Characters go into one large buffer
+ * that is handed to the underlying Writer when full, lexemes are escaped as
+ * they are copied out of the source text, and filtered tokens are skipped
+ * while writing, so no Token, String or list is created per token.
+ *
+ * Tokens and errors can also be written as newline-delimited JSON, one
+ * compact object per line with a "kind" field telling tokens from errors.
+ *
+ * The writer does not close the underlying Writer; callers flush it when done.
+ */
+public class JsonTokenWriter implements Flushable {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    // Longest escape sequence, so a character never has to be split across flushes
+    private static final int MAX_ESCAPE_LENGTH = 6;
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private final Writer out;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int position = 0;
+
+    /**
+     * Constructs a JsonTokenWriter over the given Writer.
+     *
+     * @param out The Writer that receives the JSON text.
+     */
+    public JsonTokenWriter(Writer out) {
+        this.out = out;
+    }
+
+    /**
+     * Writes the tokens whose type is accepted by the filter as JSON objects
+     * separated by ",\n", without the enclosing brackets.
+     *
+     * @param tokens The tokens to write.
+     * @param include The filter selecting the token types to write.
+     * @return The number of tokens written.
+     * @throws IOException If an error occurs while writing.
+     */
+    public int writeTokens(TokenStream tokens, Predicate<TokenType> include) throws IOException {
+        int written = 0;
+        for (int i = 0; i < tokens.size(); i++) {
+            TokenType type = tokens.type(i);
+            if (!include.test(type)) {
+                continue;
+            }
+            if (written > 0) {
+                write(",\n");
+            }
+            writeToken(tokens, i, type);
+            written++;
+        }
+        return written;
+    }
+
+    private void writeToken(TokenStream tokens, int index, TokenType type) throws IOException {
+        beginToken(type);
+        writeLexeme(tokens, index);
+        endToken(tokens.line(index), tokens.column(index));
+    }
+
+    /**
+     * Writes one token as a JSON object in the same shape as {@link #writeTokens},
+     * without a separator.
+     *
+     * @param token The token to write.
+     * @throws IOException If an error occurs while writing.
+     */
+    public void writeToken(Token token) throws IOException {
+        String lexeme = token.getLexeme();
+        beginToken(token.getType());
+        writeEscaped(lexeme, 0, lexeme.length());
+        endToken(token.getLine(), token.getColumn());
+    }
+
+    private void beginToken(TokenType type) throws IOException {
+        write("{\n    \"type\": \"");
+        write(type.name());
+        write("\",\n    \"lexeme\": \"");
+    }
+
+    private void endToken(int line, int column) throws IOException {
+        write("\",\n    \"line\": ");
+        writeInt(line);
+        write(",\n    \"column\": ");
+        writeInt(column);
+        write("\n}");
+    }
+
+    /**
+     * Writes the tokens whose type is accepted by the filter as newline-delimited
+     * JSON, one compact object per line.
+     *
+     * @param tokens The tokens to write.
+     * @param include The filter selecting the token types to write.
+     * @return The number of tokens written.
+     * @throws IOException If an error occurs while writing.
+     */
+    public int writeTokenLines(TokenStream tokens, Predicate<TokenType> include) throws IOException {
+        int written = 0;
+        for (int i = 0; i < tokens.size(); i++) {
+            TokenType type = tokens.type(i);
+            if (include.test(type)) {
+                beginTokenLine(type);
+                writeLexeme(tokens, i);
+                endTokenLine(tokens.line(i), tokens.column(i));
+                written++;
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Writes one token as a line of newline-delimited JSON.
+     *
+     * @param token The token to write.
+     * @throws IOException If an error occurs while writing.
+     */
+    public void writeTokenLine(Token token) throws IOException {
+        String lexeme = token.getLexeme();
+        beginTokenLine(token.getType());
+        writeEscaped(lexeme, 0, lexeme.length());
+        endTokenLine(token.getLine(), token.getColumn());
+    }
+
+    /**
+     * Writes one lexical error as a line of newline-delimited JSON, with the
+     * same fields as the JSON error output.
+     *
+     * @param error The error to write.
+     * @throws IOException If an error occurs while writing.
+     */
+    public void writeErrorLine(LexicalError error) throws IOException {
+        write("{\"kind\":\"error\",\"type\":\"");
+        write(error.getType().name());
+        write("\",\"message\":\"");
+        writeEscaped(error.getMessage(), 0, error.getMessage().length());
+        write("\",\"line\":");
+        writeInt(error.getLine());
+        write(",\"column\":");
+        writeInt(error.getColumn());
+        String suggestion = error.getSuggestion();
+        if (suggestion != null && !suggestion.isEmpty()) {
+            write(",\"suggestion\":\"");
+            writeEscaped(suggestion, 0, suggestion.length());
+            write("\"");
+        }
+        write("}\n");
+    }
+
+    private void beginTokenLine(TokenType type) throws IOException {
+        write("{\"kind\":\"token\",\"type\":\"");
+        write(type.name());
+        write("\",\"lexeme\":\"");
+    }
+
+    private void endTokenLine(int line, int column) throws IOException {
+        write("\",\"line\":");
+        writeInt(line);
+        write(",\"column\":");
+        writeInt(column);
+        write("}\n");
+    }
+
+    /**
+     * Writes the lexeme of a token escaped, straight from the source text when it is a slice of it.
+     */
+    private void writeLexeme(TokenStream tokens, int index) throws IOException {
+        int offset = tokens.sourceOffset(index);
+        if (offset < 0) {
+            String lexeme = tokens.lexeme(index);
+            writeEscaped(lexeme, 0, lexeme.length());
+        } else {
+            writeEscaped(tokens.source(), offset, offset + tokens.length(index));
+        }
+    }
+
+    /**
+     * Writes text as it is.
+     *
+     * @param text The text to write.
+     * @throws IOException If an error occurs while writing.
+     */
+    public void write(String text) throws IOException {
+        int length = text.length();
+        if (position + length > buffer.length) {
+            flushBuffer();
+            if (length > buffer.length) {
+                out.write(text);
+                return;
+            }
+        }
+        text.getChars(0, length, buffer, position);
+        position += length;
+    }
+
+    /**
+     * Writes a range of text escaped for use inside a JSON string, with the
+     * same escapes as {@link Main#escapeJsonString}.
+     *
+     * @param text The text holding the range.
+     * @param start The index of the first character to write.
+     * @param end The index after the last character to write.
+     * @throws IOException If an error occurs while writing.
+     */
+    public void writeEscaped(CharSequence text, int start, int end) throws IOException {
+        for (int i = start; i < end; i++) {
+            if (position + MAX_ESCAPE_LENGTH > buffer.length) {
+                flushBuffer();
+            }
+            char ch = text.charAt(i);
+            if (ch >= ' ' && ch <= '~' && ch != '"' && ch != '\\') {
+                buffer[position++] = ch;
+                continue;
+            }
+            buffer[position++] = '\\';
+            switch (ch) {
+                case '"' -> buffer[position++] = '"';
+                case '\\' -> buffer[position++] = '\\';
+                case '\b' -> buffer[position++] = 'b';
+                case '\f' -> buffer[position++] = 'f';
+                case '\n' -> buffer[position++] = 'n';
+                case '\r' -> buffer[position++] = 'r';
+                case '\t' -> buffer[position++] = 't';
+                default -> {
+                    // Non-printable and non-ASCII characters as unicode escapes
+                    buffer[position++] = 'u';
+                    buffer[position++] = HEX_DIGITS[(ch >> 12) & 0xF];
+                    buffer[position++] = HEX_DIGITS[(ch >> 8) & 0xF];
+                    buffer[position++] = HEX_DIGITS[(ch >> 4) & 0xF];
+                    buffer[position++] = HEX_DIGITS[ch & 0xF];
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes a number in decimal without creating a String.
+     *
+     * @param value The number to write.
+     * @throws IOException If an error occurs while writing.
+     */
+    public void writeInt(int value) throws IOException {
+        // Eleven characters hold any int, sign included
+        if (position + 11 > buffer.length) {
+            flushBuffer();
+        }
+        if (value < 0) {
+            if (value == Integer.MIN_VALUE) {
+                write(Integer.toString(value));
+                return;
+            }
+            buffer[position++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (int rest = value / 10; rest > 0; rest /= 10) {
+            digits++;
+        }
+        for (int i = position + digits - 1; i >= position; i--) {
+            buffer[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        position += digits;
+    }
+
+    /**
+     * Hands the buffered text to the underlying Writer and flushes it.
+     *
+     * @throws IOException If an error occurs while writing.
+     */
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+        out.flush();
+    }
+
+    private void flushBuffer() throws IOException {
+        out.write(buffer, 0, position);
+        position = 0;
+    }
+}
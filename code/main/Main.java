@@ -3,19 +3,39 @@ package main;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.PathMatcher;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 import java.util.Scanner;
-import java.util.stream.Collectors;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
 
 import lexer.Lexer;
+import lexer.ParallelLexer;
+import lexer.TailLexer;
+import lexer.TailState;
+import lexer.TokenCache;
+import lexer.TokenFileWriter;
 import lexer.Token;
+import lexer.TokenRing;
+import lexer.TokenStream;
 import lexer.TokenType;
+import lexer.TriviaChannel;
 import parser.RDP;
+import util.EnumCounter;
 import util.ErrorHandler;
 import util.SourceReader;
 
@@ -27,17 +47,32 @@ public class Main {
     private static final String OUTPUT_DIR = "output";
     private static final String DEFAULT_OUTPUT_FORMAT = "text";
     
+    // Number of NDJSON lines written between flushes of the output
+    private static final int NDJSON_FLUSH_INTERVAL = 1024;
+    
+    // Number of tokens the lexer can run ahead of the output in pipelined mode
+    private static final int PIPELINE_CAPACITY = 4096;
+    
     private final Scanner scanner;
     private String filePath;
     private boolean verbose;
     private String outputFormat;
     private boolean outputToFile;
+    private Path tailStatePath;
+    private boolean tailFinal;
+    private final List<String> batchInputs;
+    private int batchJobs;
+    private String daemonAddress;
+    private Path cacheDirectory;
+    private boolean pipelined;
     
     public Main() {
         this.scanner = new Scanner(System.in);
         this.verbose = false;
         this.outputFormat = DEFAULT_OUTPUT_FORMAT;
         this.outputToFile = false;
+        this.batchInputs = new ArrayList<>();
+        this.batchJobs = Runtime.getRuntime().availableProcessors();
     }
     
     /**
@@ -73,7 +108,10 @@ public class Main {
      * @throws IOException If an error occurs while reading the source file.
      */
     private void run(String[] args) throws IOException {
-        System.out.println("Welcome to X-presso!");
+        // NDJSON on the console is read by other programs, so nothing else goes to standard output
+        if (!(Arrays.asList(args).contains("--output=ndjson") && !Arrays.asList(args).contains("--file"))) {
+            System.out.println("Welcome to X-presso!");
+        }
         
         if (args.length < 1) {
             handleInteractiveMode();
@@ -81,7 +119,18 @@ public class Main {
             handleCommandLineMode(args);
         }
         
-        processFile();
+        // Binary token files are not printed to the console
+        if ("binary".equals(outputFormat)) {
+            outputToFile = true;
+        }
+        
+        if (daemonAddress != null) {
+            new Daemon(daemonAddress, batchJobs).serve();
+        } else if (!batchInputs.isEmpty()) {
+            processBatch();
+        } else {
+            processFile();
+        }
     }
     
     /**
@@ -105,7 +154,7 @@ public class Main {
         verbose = scanner.nextLine().trim().equalsIgnoreCase("yes");
         
         // Get output format
-        System.out.print("Select output format (text/json): ");
+        System.out.print("Select output format (text/json/binary/ndjson): ");
         outputFormat = validateOutputFormat(scanner.nextLine().trim());
         
         // Get output destination preference
@@ -117,23 +166,31 @@ public class Main {
     /**
      * Handles command-line mode configuration.
      * 
+     * A single source file is processed as before. Several inputs, a directory
+     * or a glob pattern select batch mode, in which every matching file is processed.
+     * --serve starts a {@link Daemon} instead, which takes no source file.
+     * 
      * @param args The command-line arguments containing the source file path and optional parameters.
      * @throws IOException If the file path is invalid.
      */
     private void handleCommandLineMode(String[] args) throws IOException {
-        filePath = args[0];
-        // Validate file path
-        if (!validateFilePath(filePath)) {
-            throw new IOException("Invalid file path: " + filePath);
-        }
+        List<String> inputs = new ArrayList<>();
         
         // Process optional parameters
-        for (int i = 1; i < args.length; i++) {
+        for (int i = 0; i < args.length; i++) {
             switch (args[i].toLowerCase()) {
                 case "--verbose" -> verbose = true;
                     // Enable verbose mode
                 case "--file" -> outputToFile = true;
                     // Output to file
+                case "--serve" -> daemonAddress = Daemon.DEFAULT_ADDRESS;
+                    // Serve requests on the default port
+                case "--cache" -> cacheDirectory = Paths.get(OUTPUT_DIR, "cache");
+                    // Reuse the tokens of unchanged files from the default cache directory
+                case "--pipeline" -> pipelined = true;
+                    // Lex on a separate thread while the tokens are written
+                case "--tail-final" -> tailFinal = true;
+                    // The tailed file is complete: lex to its end and add EOF
                 default -> {
                     if (args[i].startsWith("--output=")) {
                         // Custom output format
@@ -141,10 +198,79 @@ public class Main {
                             // Extract output format from argument
                             args[i].substring("--output=".length())
                         );
+                    } else if (args[i].startsWith("--tail=")) {
+                        // Lex only what was appended since the run that saved this state file
+                        tailStatePath = Paths.get(args[i].substring("--tail=".length()));
+                    } else if (args[i].startsWith("--cache=")) {
+                        // Reuse the tokens of unchanged files from the given cache directory
+                        cacheDirectory = Paths.get(args[i].substring("--cache=".length()));
+                    } else if (args[i].startsWith("--serve=")) {
+                        // Serve requests on a loopback port or Unix domain socket
+                        daemonAddress = args[i].substring("--serve=".length());
+                    } else if (args[i].startsWith("--jobs=")) {
+                        // Number of files processed at once in batch mode
+                        batchJobs = validateJobCount(args[i].substring("--jobs=".length()));
+                    } else if (!args[i].startsWith("--")) {
+                        // Further input files, directories or glob patterns
+                        inputs.add(args[i]);
                     }
                 }
             }
         }
+
+        if (daemonAddress != null) {
+            return;
+        }
+        if (tailFinal && tailStatePath == null) {
+            throw new IOException("--tail-final needs a state file given with --tail=");
+        }
+        if (inputs.isEmpty()) {
+            throw new IOException("No source file given");
+        }
+        if (inputs.size() == 1 && !isBatchInput(inputs.get(0))) {
+            filePath = inputs.get(0);
+            // Validate file path
+            if (!validateFilePath(filePath)) {
+                throw new IOException("Invalid file path: " + filePath);
+            }
+        } else if (tailStatePath != null) {
+            throw new IOException("Tail mode takes a single source file");
+        } else {
+            batchInputs.addAll(inputs);
+        }
+    }
+
+    /**
+     * Checks whether an input names more than one file: a directory or a glob pattern.
+     * 
+     * @param input The input given on the command line.
+     * @return true if the input is processed in batch mode.
+     */
+    private boolean isBatchInput(String input) {
+        return isGlobPattern(input) || Files.isDirectory(Paths.get(input));
+    }
+
+    private static boolean isGlobPattern(String input) {
+        return input.chars().anyMatch(c -> c == '*' || c == '?' || c == '[' || c == '{');
+    }
+
+    /**
+     * Validates the number of batch workers, defaulting to the number of processors.
+     * 
+     * @param value The value given with --jobs.
+     * @return The number of workers to use.
+     */
+    private int validateJobCount(String value) {
+        try {
+            int jobs = Integer.parseInt(value);
+            if (jobs > 0) {
+                return jobs;
+            }
+        } catch (NumberFormatException e) {
+            // Fall through to the default
+        }
+        System.out.println("Invalid job count, defaulting to " + batchJobs + ".");
+        return batchJobs;
     }
 
     /**
@@ -183,11 +309,11 @@ public class Main {
      * If the format is invalid, it prints an error message and returns the default output format.
      * Otherwise, it returns the validated and normalized output format.
      * 
-     * @param format The output format to validate (e.g. "text", "json")
+     * @param format The output format to validate (e.g. "text", "json", "binary", "ndjson")
      * @return The validated and normalized output format
      */
     private String validateOutputFormat(String format) {
-        if (format == null || (!format.equals("text") && !format.equals("json"))) {
+        if (format == null || !List.of("text", "json", "binary", "ndjson").contains(format)) {
             System.out.println("Invalid output format, defaulting to 'text'.");
             return DEFAULT_OUTPUT_FORMAT;
         }
@@ -208,10 +334,11 @@ public class Main {
      * 
      * This method performs the following steps:
      * 1. Creates the output directory if needed.
-     * 2. Creates a SourceReader for the input file.
-     * 3. Tokenizes the source using a Lexer instance.
-     * 4. Outputs the tokens to the console or file, depending on the output format preference.
-     * 5. Prints a summary of the token analysis to the console.
+     * 2. Takes the tokens from the cache if enabled and the file is unchanged,
+     *    otherwise creates a SourceReader for the input file and tokenizes it.
+     * 3. Outputs the tokens to the console or file, depending on the output format preference.
+     * 4. Prints a summary of the token analysis to the console.
+     * 5. Parses the tokens.
      * 
      * @throws IOException If an error occurs while processing the file.
      */
@@ -221,44 +348,485 @@ public class Main {
             createOutputDirectory();
         }
         
-        try (SourceReader reader = new SourceReader(filePath, StandardCharsets.UTF_8)) {
-            // 2. Create lexer and tokenize
-            List<Token> tokens = tokenizeSource(reader);
+        if (tailStatePath != null) {
+            processAppendedText();
+            return;
+        }
+        if ("ndjson".equals(outputFormat)) {
+            streamAsNdjson();
+            return;
+        }
+        // Binary token files are laid out from all the tokens at once, so there is nothing to overlap
+        if (pipelined && !"binary".equals(outputFormat)) {
+            processPipelined();
+            return;
+        }
+
+        try {
+            // 2. Take the tokens from the cache if the file is unchanged, otherwise
+            //    create a lexer and tokenize, with whitespace and comments on a side channel
+            TokenCache cache = cacheDirectory == null ? null : new TokenCache(cacheDirectory, TokenCache.DEFAULT_MAX_BYTES);
+            String cacheKey = cache == null ? null : TokenCache.key(Paths.get(filePath));
+            TokenCache.Entry cached = cache == null ? null : cache.get(cacheKey, Paths.get(filePath));
 
-            // 3. Filter whitespace tokens before parsing
-            List<Token> filteredTokens = filterWhitespaceTokens(tokens);
+            TokenStream tokens;
+            TriviaChannel trivia;
+            EnumCounter<TokenType> tokenCounts;
+            if (cached != null) {
+                tokens = cached.getTokens();
+                trivia = cached.getTrivia();
+                tokenCounts = new EnumCounter<>(TokenType.class);
+                tokens.addCountsTo(tokenCounts);
+                trivia.tokens().addCountsTo(tokenCounts);
+                handleLexicalErrors(replayErrors(cached.getErrors()));
+            } else {
+                try (SourceReader reader = SourceReader.open(filePath, StandardCharsets.UTF_8)) {
+                    Lexer lexer = createLexer(reader);
+                    tokens = tokenizeSource(lexer);
+                    trivia = lexer.getTrivia();
+                    tokenCounts = lexer.getTokenCounts();
+                    if (cache != null) {
+                        cache.put(cacheKey, tokens, trivia, lexer.getErrorHandler().getErrors());
+                    }
+                }
+            }
 
-            // 4. Output tokens after parsing
-            outputTokens(tokens);
+            // 3. Output tokens, merging the trivia back in for verbose output
+            outputTokens(verbose ? trivia.merge(tokens) : tokens);
 
-            // 5. Print token summary
-            printTokenSummary(tokens);
+            // 4. Print token summary
+            printTokenSummary(tokenCounts);
 
-            // 6. Pass filtered tokens to the parser
-            RDP parser = new RDP(filteredTokens);
+            // 5. Pass the significant tokens to the parser
+            RDP parser = new RDP(tokens);
             parser.parse();  // Perform syntax analysis
         } catch (Exception e) {
             throw new IOException("Error processing file: " + e.getMessage(), e);
         }
     }
     
+    /**
+     * Processes the input file with lexing and output running at the same time.
+     * 
+     * A lexer thread publishes tokens into a {@link TokenRing} while this thread
+     * takes them out, writes them to the console or output file as they arrive and
+     * keeps them for the summary and the parser. When the output falls behind, the
+     * full ring holds the lexer back, so at most {@link #PIPELINE_CAPACITY} tokens
+     * are in flight. The cache is not used.
+     * 
+     * @throws IOException If an error occurs while processing the file.
+     */
+    private void processPipelined() throws IOException {
+        TokenRing ring = new TokenRing(PIPELINE_CAPACITY);
+        Path outputPath = outputToFile ? outputPathFor(Paths.get(filePath).getFileName()) : null;
+
+        try (SourceReader reader = SourceReader.open(filePath, StandardCharsets.UTF_8)) {
+            // Trivia stays inline so that it reaches the output in source order
+            Lexer lexer = new Lexer(reader, Lexer.TriviaMode.INLINE);
+            Thread producer = new Thread(() -> publishTokens(lexer, ring), "lexer");
+            producer.setDaemon(true);
+            producer.start();
+
+            // The lexemes are copied into one buffer that the kept tokens are slices of
+            StringBuilder text = new StringBuilder();
+            TokenStream inline = new TokenStream(text);
+            try {
+                consumeTokens(ring, inline, text, outputPath);
+            } finally {
+                // Releases the lexer if the output failed with tokens still coming
+                ring.cancel();
+                producer.join();
+            }
+            if (ring.getFailure() != null) {
+                throw new IOException("Error during tokenization: " + ring.getFailure().getMessage(), ring.getFailure());
+            }
+            handleLexicalErrors(lexer.getErrorHandler());
+
+            TriviaChannel trivia = new TriviaChannel(text);
+            TokenStream tokens = trivia.split(inline);
+            if (outputToFile) {
+                System.out.println("Tokens written to file: " + outputPath);
+            }
+            printTokenSummary(lexer.getTokenCounts());
+
+            RDP parser = new RDP(tokens);
+            parser.parse();
+        } catch (Exception e) {
+            throw new IOException("Error processing file: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Runs on the lexer thread of {@link #processPipelined()}, publishing every
+     * token until the end of the input or until the consumer stops.
+     */
+    private static void publishTokens(Lexer lexer, TokenRing ring) {
+        try {
+            Token token;
+            while ((token = lexer.nextToken()) != null && ring.put(token)) {
+                // put() waits while the ring is full
+            }
+            ring.close();
+        } catch (Throwable e) {
+            ring.fail(e);
+        }
+    }
+
+    /**
+     * Takes the tokens out of the ring, adding each to the inline stream and
+     * writing those that should be printed in the selected output format.
+     * 
+     * @param ring The ring the lexer thread publishes into.
+     * @param inline The stream that keeps every token, trivia included.
+     * @param text The buffer holding the lexemes of the inline stream.
+     * @param outputPath The output file, or null for the console.
+     * @throws IOException If an error occurs while writing the tokens.
+     */
+    private void consumeTokens(TokenRing ring, TokenStream inline, StringBuilder text, Path outputPath) throws IOException {
+        boolean json = "json".equals(outputFormat);
+        Writer out = outputPath != null ? new FileWriter(outputPath.toFile())
+            : json ? new OutputStreamWriter(System.out, StandardCharsets.US_ASCII)
+            : new OutputStreamWriter(System.out);
+
+        try {
+            JsonTokenWriter writer = new JsonTokenWriter(out);
+            if (json) {
+                writer.write(outputPath != null ? "[\n" : "\nTokens (JSON):\n[\n");
+            } else {
+                writer.write(outputPath != null ? "" : "\nTokens:\n");
+                writer.write(Token.header() + "\n");
+            }
+
+            int written = 0;
+            Token token;
+            while ((token = ring.take()) != null) {
+                String lexeme = token.getLexeme();
+                inline.add(token.getType(), text.length(), lexeme.length(), token.getLine(), token.getColumn());
+                text.append(lexeme);
+
+                if (shouldPrintToken(token)) {
+                    if (json) {
+                        if (written > 0) {
+                            writer.write(",\n");
+                        }
+                        writer.writeToken(token);
+                    } else {
+                        writer.write(token.toString());
+                        writer.write("\n");
+                    }
+                    written++;
+                }
+            }
+
+            if (json) {
+                writer.write(outputPath == null || written > 0 ? "\n]\n" : "]\n");
+            }
+            writer.flush();
+        } finally {
+            // System.out itself stays open
+            if (outputPath != null) {
+                out.close();
+            }
+        }
+    }
+    
+    /**
+     * Streams the tokens and lexical errors of the input file as newline-delimited JSON.
+     * 
+     * The lexer is pulled one token at a time, so memory use does not grow with the
+     * size of the input. Each error and each token becomes one JSON object on its own
+     * line, errors ahead of the token during which they were found, and the output is
+     * flushed every {@link #NDJSON_FLUSH_INTERVAL} lines so that consumers can start
+     * while the lexer is still running. On the console nothing else is printed; with
+     * an output file the summary follows as usual. The tokens are not parsed, since
+     * the parser needs all of them at once.
+     * 
+     * @throws IOException If an error occurs while processing the file.
+     */
+    private void streamAsNdjson() throws IOException {
+        Path outputPath = outputToFile ? outputPathFor(Paths.get(filePath).getFileName()) : null;
+        Writer out = outputToFile
+            ? Files.newBufferedWriter(outputPath, StandardCharsets.US_ASCII)
+            : new OutputStreamWriter(System.out, StandardCharsets.US_ASCII);
+        ErrorHandler errorHandler = new ErrorHandler(false);
+        Lexer lexer;
+
+        try (SourceReader reader = SourceReader.open(filePath, StandardCharsets.UTF_8)) {
+            // Trivia only reaches the stream in verbose mode
+            lexer = new Lexer(reader, verbose ? Lexer.TriviaMode.INLINE : Lexer.TriviaMode.DROP, errorHandler);
+            JsonTokenWriter json = new JsonTokenWriter(out);
+            int unflushed = 0;
+
+            Token token;
+            do {
+                token = lexer.nextToken();
+                // Errors found while lexing this token come first, then are dropped to keep memory flat
+                if (errorHandler.hasErrors()) {
+                    for (ErrorHandler.LexicalError error : errorHandler.getErrors()) {
+                        json.writeErrorLine(error);
+                        unflushed++;
+                    }
+                    errorHandler.clearErrors();
+                }
+                if (token != null && shouldPrintToken(token)) {
+                    json.writeTokenLine(token);
+                    unflushed++;
+                }
+                if (unflushed >= NDJSON_FLUSH_INTERVAL) {
+                    json.flush();
+                    unflushed = 0;
+                }
+            } while (token != null);
+            json.flush();
+        } catch (Exception e) {
+            throw new IOException("Error processing file: " + e.getMessage(), e);
+        } finally {
+            // System.out itself stays open
+            if (outputToFile) {
+                out.close();
+            }
+        }
+
+        if (outputToFile) {
+            // The counters cover the errors that were cleared after writing
+            System.out.println("Tokens written to file: " + outputPath);
+            printTokenSummary(lexer.getTokenCounts());
+            printErrorStatistics(errorHandler.getErrorCounts());
+        }
+    }
+    
+    /**
+     * Processes the text appended to the input file since the last tail run.
+     * 
+     * The lexer resumes from the state saved in the tail state file, or from the
+     * start of the file if there is none yet. The new tokens are output and
+     * summarized like a full run, but not parsed, since they are only part of
+     * a program. The state is saved again for the next run. With --tail-final
+     * the file is taken to be complete: the rest of it is lexed, EOF is added
+     * and the saved state points at its end.
+     * 
+     * @throws IOException If an error occurs while processing the file.
+     */
+    private void processAppendedText() throws IOException {
+        TailState state = Files.exists(tailStatePath)
+            ? TailState.load(tailStatePath)
+            : new TailState(StandardCharsets.UTF_8);
+
+        try (SourceReader reader = state.openReader(filePath)) {
+            TailLexer lexer = new TailLexer(reader, Lexer.TriviaMode.CHANNEL, state, tailFinal);
+            TokenStream tokens = tokenizeSource(lexer);
+            TriviaChannel trivia = lexer.getTrivia();
+
+            outputTokens(verbose ? trivia.merge(tokens) : tokens);
+            printTokenSummary(lexer.getTokenCounts());
+
+            lexer.getState().save(tailStatePath);
+        } catch (Exception e) {
+            throw new IOException("Error processing file: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Result of lexing one file in batch mode.
+     */
+    private static final class BatchResult {
+        final Path file;
+        final Path outputPath;
+        final EnumCounter<TokenType> tokenCounts;
+        final List<ErrorHandler.LexicalError> errors;
+        final EnumCounter<ErrorHandler.ErrorType> errorCounts;
+        final String failure;
+
+        BatchResult(Path file, Path outputPath, EnumCounter<TokenType> tokenCounts,
+                    ErrorHandler errorHandler, String failure) {
+            this.file = file;
+            this.outputPath = outputPath;
+            this.tokenCounts = tokenCounts;
+            this.errors = errorHandler.getErrors();
+            this.errorCounts = errorHandler.getErrorCounts();
+            this.failure = failure;
+        }
+    }
+
+    /**
+     * Processes every file named by the batch inputs.
+     * 
+     * This method performs the following steps:
+     * 1. Expands directories and glob patterns into a sorted list of files.
+     * 2. Lexes the files concurrently on a fixed pool of workers, writing the
+     *    tokens of each file to its own file in the output directory.
+     * 3. Reports the files and their errors in sorted order, whatever order
+     *    the workers finish in.
+     * 4. Prints one token summary and one error statistics table for all files.
+     * 
+     * @throws IOException If the inputs cannot be listed or the output directory cannot be created.
+     */
+    private void processBatch() throws IOException {
+        // 1. Expand the inputs
+        List<Path> files = expandInputs(batchInputs);
+        if (files.isEmpty()) {
+            throw new IOException("No files match: " + String.join(" ", batchInputs));
+        }
+        createOutputDirectory();
+
+        // 2. Lex the files on the worker pool
+        ExecutorService workers = Executors.newFixedThreadPool(Math.min(batchJobs, files.size()));
+        List<Future<BatchResult>> results = new ArrayList<>();
+        try {
+            for (Path file : files) {
+                results.add(workers.submit(() -> processBatchFile(file)));
+            }
+
+            // 3. Report the results in input order
+            EnumCounter<TokenType> tokenSummary = new EnumCounter<>(TokenType.class);
+            EnumCounter<ErrorHandler.ErrorType> errorStats = new EnumCounter<>(ErrorHandler.ErrorType.class);
+            int failed = 0;
+            for (Future<BatchResult> future : results) {
+                BatchResult result = future.get();
+                if (result.failure != null) {
+                    failed++;
+                    System.err.println("Failed to process " + result.file + ": " + result.failure);
+                    continue;
+                }
+                System.out.println("Tokens written to file: " + result.outputPath);
+                tokenSummary.addAll(result.tokenCounts);
+                errorStats.addAll(result.errorCounts);
+                if (!result.errors.isEmpty()) {
+                    System.err.println("\nErrors in " + result.file + ":");
+                    for (ErrorHandler.LexicalError error : result.errors) {
+                        System.err.println(error);
+                    }
+                }
+            }
+
+            // 4. Print the aggregated summary
+            System.out.printf("%nProcessed %d files (%d failed)%n", files.size(), failed);
+            printTokenSummary(tokenSummary);
+            printErrorStatistics(errorStats);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Batch processing interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Error processing batch: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    /**
+     * Lexes one file for batch mode and writes its tokens to the output directory.
+     * Errors are collected instead of printed, so that they can be reported in order.
+     * 
+     * @param file The file to process.
+     * @return The token counts and errors of the file, or the reason it failed.
+     */
+    private BatchResult processBatchFile(Path file) {
+        Path outputPath = outputPathFor(batchOutputName(file));
+        try (SourceReader reader = SourceReader.open(file.toString(), StandardCharsets.UTF_8)) {
+            Lexer lexer = new Lexer(reader, Lexer.TriviaMode.CHANNEL, new ErrorHandler(false));
+            TokenStream tokens = lexer.tokenize();
+            TriviaChannel trivia = lexer.getTrivia();
+
+            Files.createDirectories(outputPath.getParent());
+            writeTokens(verbose ? trivia.merge(tokens) : tokens, outputPath);
+
+            return new BatchResult(file, outputPath, lexer.getTokenCounts(), lexer.getErrorHandler(), null);
+        } catch (IOException e) {
+            return new BatchResult(file, outputPath, new EnumCounter<>(TokenType.class),
+                new ErrorHandler(false), e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the path of a batch input below the output directory: the input
+     * path with any root and leading ".." removed, so files with the same
+     * name in different directories do not overwrite each other.
+     */
+    private static Path batchOutputName(Path file) {
+        Path path = file.normalize();
+        if (path.getRoot() != null) {
+            path = path.getRoot().relativize(path);
+        }
+        int first = 0;
+        while (first < path.getNameCount() - 1 && path.getName(first).toString().equals("..")) {
+            first++;
+        }
+        return path.subpath(first, path.getNameCount());
+    }
+
+    /**
+     * Expands files, directories and glob patterns into a sorted list of files.
+     * Directories are searched recursively. A glob is matched below the longest
+     * leading part of it that has no pattern characters, so "src/**" + "/*.txt"
+     * searches src.
+     * 
+     * @param inputs The inputs given on the command line.
+     * @return The regular files named by the inputs, sorted and without duplicates.
+     * @throws IOException If a directory cannot be listed.
+     */
+    private static List<Path> expandInputs(List<String> inputs) throws IOException {
+        Set<Path> files = new TreeSet<>();
+        for (String input : inputs) {
+            if (isGlobPattern(input)) {
+                String pattern = input.replace(File.separatorChar, '/');
+                int split = 0;
+                for (int i = 0; i < pattern.length() && "*?[{".indexOf(pattern.charAt(i)) == -1; i++) {
+                    if (pattern.charAt(i) == '/') {
+                        split = i + 1;
+                    }
+                }
+                Path base = Paths.get(pattern.substring(0, split));
+                PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+                if (Files.isDirectory(base.toString().isEmpty() ? Paths.get(".") : base)) {
+                    try (Stream<Path> paths = Files.walk(base)) {
+                        paths.filter(Files::isRegularFile).filter(matcher::matches).forEach(files::add);
+                    }
+                }
+            } else if (Files.isDirectory(Paths.get(input))) {
+                try (Stream<Path> paths = Files.walk(Paths.get(input))) {
+                    paths.filter(Files::isRegularFile).forEach(files::add);
+                }
+            } else if (Files.isRegularFile(Paths.get(input))) {
+                files.add(Paths.get(input));
+            } else {
+                System.err.println("File does not exist: " + input);
+            }
+        }
+        return new ArrayList<>(files);
+    }
+
+    /**
+     * Reports cached lexical errors again, printing each one as the lexer would have.
+     * 
+     * @param errors The errors stored with the cached tokens.
+     * @return An error handler holding the errors.
+     */
+    private ErrorHandler replayErrors(List<ErrorHandler.LexicalError> errors) {
+        ErrorHandler errorHandler = new ErrorHandler();
+        errorHandler.setCurrentFile(filePath);
+        for (ErrorHandler.LexicalError error : errors) {
+            errorHandler.reportError(error.getType(), error.getMessage(),
+                error.getLine(), error.getColumn(), error.getSuggestion());
+        }
+        return errorHandler;
+    }
+
     /**
      * Tokenizes the source using the lexer.
      * 
-     * This method creates a Lexer instance and uses it to tokenize the source code.
+     * This method uses the given Lexer instance to tokenize the source code.
      * It then handles any lexical errors that may have occurred during tokenization
      * by reporting them to the error handler.
-     * Finally, it returns the list of tokens generated by the lexer.
+     * Finally, it returns the stream of tokens generated by the lexer.
      * 
-     * @param reader The source reader for the file.
-     * @return A list of tokens generated by the lexer.
+     * @param lexer The lexer for the file.
+     * @return The stream of tokens generated by the lexer.
      * @throws IOException If an error occurs during tokenization.
      */
-    private List<Token> tokenizeSource(SourceReader reader) throws IOException {
+    private TokenStream tokenizeSource(Lexer lexer) throws IOException {
         try {
-            Lexer lexer = createLexer(reader);
-            List<Token> tokens = lexer.tokenize();
-            handleLexicalErrors(lexer);
+            TokenStream tokens = lexer.tokenize();
+            handleLexicalErrors(lexer.getErrorHandler());
             return tokens;
         } catch (Exception e) {
             // Wrap the exception in an IOException with a descriptive message
@@ -267,14 +835,26 @@ public class Main {
     }
     
     /**
-     * Creates a new Lexer instance.
+     * Creates a new Lexer instance that keeps whitespace and comments on a side channel,
+     * so the parser gets the significant tokens without another filtering pass.
+     * Files of at least {@link ParallelLexer#PARALLEL_THRESHOLD} bytes are lexed
+     * in parallel chunks when more than one processor is available.
      * 
      * @param reader The source reader for the file.
      * @return A new Lexer instance.
      */
     private Lexer createLexer(SourceReader reader) {
+        try {
+            if (Runtime.getRuntime().availableProcessors() > 1
+                    && Files.size(Paths.get(filePath)) >= ParallelLexer.PARALLEL_THRESHOLD) {
+                return new ParallelLexer(reader, Lexer.TriviaMode.CHANNEL);
+            }
+        } catch (IOException e) {
+            // Fall back to the sequential lexer
+        }
+
         // Create a Lexer instance for tokenization
-        return new Lexer(reader);
+        return new Lexer(reader, Lexer.TriviaMode.CHANNEL);
     }
 
     
@@ -291,13 +871,18 @@ public class Main {
         }
     }
     
-    private void outputTokens(List<Token> tokens) throws IOException {
+    private void outputTokens(TokenStream tokens) throws IOException {
         if (outputToFile) {
             writeTokensToFile(tokens);
         } else {
             if ("json".equals(outputFormat)) {
                 // Print tokens in JSON format to console
                 printTokensAsJson(tokens);
+            } else if ("ndjson".equals(outputFormat)) {
+                // Print one token per line in JSON format to console
+                JsonTokenWriter json = new JsonTokenWriter(new OutputStreamWriter(System.out, StandardCharsets.US_ASCII));
+                json.writeTokenLines(tokens, this::shouldPrintToken);
+                json.flush();
             } else {
                 // Print tokens in text format to console
                 printTokensAsText(tokens);
@@ -326,22 +911,19 @@ public class Main {
     /**
      * Prints tokens in JSON format to console.
      * 
-     * This method takes a list of tokens, filters out the ones that shouldn't be printed (as determined by the
-     * shouldPrintToken method), converts them to JSON format using the tokenToJson method, and prints them
-     * to the console as a JSON array.
+     * This method streams the tokens that should be printed (as determined by the
+     * shouldPrintToken method) to the console as a JSON array, skipping the others
+     * on the fly.
      */
-    private void printTokensAsJson(List<Token> tokens) {
+    private void printTokensAsJson(TokenStream tokens) throws IOException {
         System.out.println("\nTokens (JSON):");
         System.out.println("[");
         
-        // Filter out tokens that shouldn't be printed
-        String jsonTokens = tokens.stream()
-            .filter(this::shouldPrintToken)
-            .map(this::tokenToJson)
-            .collect(Collectors.joining(",\n"));
-            
-        System.out.println(jsonTokens);
-        System.out.println("]");
+        // System.out itself is flushed, not closed
+        JsonTokenWriter json = new JsonTokenWriter(new OutputStreamWriter(System.out, StandardCharsets.US_ASCII));
+        json.writeTokens(tokens, this::shouldPrintToken);
+        json.write("\n]\n");
+        json.flush();
     }
     
     /**
@@ -349,32 +931,68 @@ public class Main {
      * 
      * This method takes the base name of the input file, strips off any file extension, and appends
      * "_output.<extension>" to it to form the output file path. The extension is determined by the
-     * outputFormat parameter, which can be either "json" or "txt". The tokens are written to the file
+     * outputFormat parameter, which can be "json", "tok", "ndjson" or "txt". The tokens are written to the file
      * using the appropriate writeTokensAsXxx method.
      * 
      * @param tokens The list of tokens to write to the file.
      * @throws IOException If an error occurs while writing to the file.
      */
-    private void writeTokensToFile(List<Token> tokens) throws IOException {
+    private void writeTokensToFile(TokenStream tokens) throws IOException {
+        Path outputPath = outputPathFor(Paths.get(filePath).getFileName());
+        writeTokens(tokens, outputPath);
+        System.out.println("Tokens written to file: " + outputPath);
+    }
+
+    /**
+     * Returns the path of the output file for an input file. The file extension of
+     * the input is replaced by "_output.json", "_output.tok", "_output.ndjson" or "_output.txt", and any directories
+     * of the given path are kept below the output directory.
+     * 
+     * @param input The input file path, relative to the output directory.
+     * @return The output file path.
+     */
+    private Path outputPathFor(Path input) {
         // Get the base name of the input file
-        String baseName = Paths.get(filePath).getFileName().toString();
+        String baseName = input.getFileName().toString();
         if (baseName.contains(".")) {
             // Strip off any file extension
             baseName = baseName.substring(0, baseName.lastIndexOf("."));
         }
         
         // Determine the output file extension based on the format
-        String extension = "json".equals(outputFormat) ? "json" : "txt";
-        Path outputPath = Paths.get(OUTPUT_DIR, baseName + "_output." + extension);
-        
-        // Write the tokens to the file
+        String extension = switch (outputFormat) {
+            case "json" -> "json";
+            case "binary" -> "tok";
+            case "ndjson" -> "ndjson";
+            default -> "txt";
+        };
+        Path directory = input.getParent() == null ? Paths.get(OUTPUT_DIR) : Paths.get(OUTPUT_DIR).resolve(input.getParent());
+        return directory.resolve(baseName + "_output." + extension);
+    }
+
+    /**
+     * Writes tokens to the given file in the selected output format.
+     * 
+     * @param tokens The list of tokens to write.
+     * @param outputPath The file to write.
+     * @throws IOException If an error occurs while writing to the file.
+     */
+    private void writeTokens(TokenStream tokens, Path outputPath) throws IOException {
+        if ("binary".equals(outputFormat)) {
+            // Compact token file, read back with TokenFileReader
+            TokenFileWriter.write(tokens, this::shouldPrintToken, outputPath);
+            return;
+        }
         try (FileWriter writer = new FileWriter(outputPath.toFile())) {
             if ("json".equals(outputFormat)) {
                 writeTokensAsJson(tokens, writer);
+            } else if ("ndjson".equals(outputFormat)) {
+                JsonTokenWriter json = new JsonTokenWriter(writer);
+                json.writeTokenLines(tokens, this::shouldPrintToken);
+                json.flush();
             } else {
                 writeTokensAsText(tokens, writer);
             }
-            System.out.println("Tokens written to file: " + outputPath);
         }
     }
     
@@ -405,53 +1023,24 @@ public class Main {
     /**
      * Writes tokens in JSON format to a file.
      * 
-     * This method takes a list of tokens and a FileWriter object, and writes the tokens to the file
-     * in JSON format. It first writes the opening bracket to the file, and then iterates over the
-     * tokens, writing each one to the file if it should be printed (as determined by the
-     * shouldPrintToken method). It adds a comma after each token, unless it is the last token in the
-     * list. Finally, it writes the closing bracket to the file.
+     * This method streams the tokens that should be printed (as determined by the
+     * shouldPrintToken method) into the file as a JSON array, skipping the others
+     * on the fly, with a comma after each token except the last.
      * 
-     * @param tokens The list of tokens to write to the file.
+     * @param tokens The tokens to write to the file.
      * @param writer The FileWriter object to write to.
      * @throws IOException If an error occurs while writing to the file.
      */
-    private void writeTokensAsJson(List<Token> tokens, FileWriter writer) throws IOException {
-        writer.write("[\n");
-        List<Token> filteredTokens = tokens.stream()
-            .filter(this::shouldPrintToken)
-            .collect(Collectors.toList());
-            
-        for (int i = 0; i < filteredTokens.size(); i++) {
-            writer.write(tokenToJson(filteredTokens.get(i)));
-            if (i < filteredTokens.size() - 1) {
-                writer.write(",");
-            }
-            writer.write("\n");
+    private void writeTokensAsJson(TokenStream tokens, FileWriter writer) throws IOException {
+        JsonTokenWriter json = new JsonTokenWriter(writer);
+        json.write("[\n");
+        if (json.writeTokens(tokens, this::shouldPrintToken) > 0) {
+            json.write("\n");
         }
-        writer.write("]\n");
+        json.write("]\n");
+        json.flush();
     }
     
-    /**
-     * Converts a token to JSON format.
-     * @param token The token to convert
-     * @return The token in JSON format
-     */
-    private String tokenToJson(Token token) {
-        return String.format("""
-            {
-                "type": "%s",
-                "lexeme": "%s",
-                "line": %d,
-                "column": %d
-            }""",
-            token.getType(),
-            escapeJsonString(token.getLexeme()),
-            token.getLine(),
-            token.getColumn()
-        );
-    }
-    
-    
     /**
      * Determines whether a token should be included in output. This decision is based on the
      * value of the verbose flag. If the verbose flag is set to true, all tokens are included in
@@ -462,48 +1051,63 @@ public class Main {
      * @return true if the token should be included in output, false otherwise
      */
     private boolean shouldPrintToken(Token token) {
+        return shouldPrintToken(token.getType());
+    }
+
+    private boolean shouldPrintToken(TokenType type) {
         return verbose || 
-                (token.getType() != TokenType.WHITESPACE && 
-                token.getType() != TokenType.COMMENT && 
-                token.getType() != TokenType.EOF);
+                (type != TokenType.WHITESPACE && 
+                type != TokenType.COMMENT && 
+                type != TokenType.EOF);
     }
     
     /**
      * Prints a summary of token counts by type.
      * 
-     * This method takes a list of tokens, groups them by their type, 
-     * and counts the occurrences of each type. It then prints a formatted 
-     * summary to the console, showing the count of each token type.
+     * The counts are kept by the lexer as it emits tokens, so the tokens are not
+     * gone over again. Types that did not occur are left out, and the others are
+     * printed in declaration order.
      * 
-     * @param tokens The list of tokens to summarize.
+     * @param tokenCounts The number of tokens of each type.
      */
-    private void printTokenSummary(List<Token> tokens) {
-        // Group tokens by their type and count the occurrences of each type
-        Map<TokenType, Long> tokenSummary = tokens.stream()
-            .collect(Collectors.groupingBy(Token::getType, Collectors.counting()));
-        
+    private void printTokenSummary(EnumCounter<TokenType> tokenCounts) {
         // Print the token summary header
         System.out.println("\nToken Summary:");
         
         // Iterate through the token summary and print each type with its count
-        tokenSummary.forEach((type, count) -> 
+        tokenCounts.toMap().forEach((type, count) -> 
             System.out.printf("%-20s : %d%n", type, count));
     }
     
+    /**
+     * Prints the number of errors of each type, if there were any.
+     * 
+     * @param errorCounts The number of errors of each type.
+     */
+    private void printErrorStatistics(EnumCounter<ErrorHandler.ErrorType> errorCounts) {
+        if (errorCounts.isEmpty()) {
+            return;
+        }
+        
+        // Print error statistics header
+        System.err.println("\nError Statistics:");
+        
+        // Iterate through error statistics and print each type with its count
+        errorCounts.toMap().forEach((type, count) -> 
+            System.err.printf("%-25s : %d%n", type, count));
+    }
+    
     /**
      * Handles and displays lexical errors from the lexer.
      * 
-     * This method retrieves the error handler from the given lexer 
-     * and checks if any errors have been recorded. If errors are present, 
+     * This method checks whether the given error handler has recorded
+     * any errors. If errors are present,
      * it outputs them in the specified format (JSON or plain text) and 
      * prints error statistics showing the count of each error type.
      * 
-     * @param lexer The lexer instance containing the error handler.
+     * @param errorHandler The error handler holding the errors of the lexer.
      */
-    private void handleLexicalErrors(Lexer lexer) {
-        // Retrieve the error handler from the lexer
-        ErrorHandler errorHandler = lexer.getErrorHandler();
-        
+    private void handleLexicalErrors(ErrorHandler errorHandler) {
         // Check if there are any recorded errors
         if (errorHandler.hasErrors()) {
             // Output errors in JSON format if specified
@@ -514,16 +1118,8 @@ public class Main {
                 errorHandler.printErrors();
             }
             
-            // Print error statistics header
-            System.err.println("\nError Statistics:");
-            
-            // Group and count errors by their type
-            Map<ErrorHandler.ErrorType, Long> errorStats = errorHandler.getErrors().stream()
-                .collect(Collectors.groupingBy(error -> error.getType(), Collectors.counting()));
-                
-            // Iterate through error statistics and print each type with its count
-            errorStats.forEach((type, count) -> 
-                System.err.printf("%-25s : %d%n", type, count));
+            // Print the counts kept by the error handler as errors were reported
+            printErrorStatistics(errorHandler.getErrorCounts());
         }
     }
     
@@ -537,35 +1133,42 @@ public class Main {
         
         // Iterate through errors and print each as a JSON object
         for (int i = 0; i < errors.size(); i++) {
-            ErrorHandler.LexicalError error = errors.get(i);
-            System.err.printf("""
-                {
-                    "type": "%s",
-                    "message": "%s",
-                    "line": %d,
-                    "column": %d%s
-                }%s
-                """,
-                // Error type
-                error.getType(),
-                // Error message
-                escapeJsonString(error.getMessage()),
-                // Line and column of the error
-                error.getLine(),
-                error.getColumn(),
-                // Suggestion if available
-                error.getSuggestion() != null && !error.getSuggestion().isEmpty() 
-                    ? String.format(",\n    \"suggestion\": \"%s\"", escapeJsonString(error.getSuggestion()))
-                    : "",
+            System.err.println(errorToJson(errors.get(i))
                 // Comma separator if not last element
-                i < errors.size() - 1 ? "," : ""
-            );
+                + (i < errors.size() - 1 ? "," : ""));
         }
         
         // End JSON array
         System.err.println("]");
     }
     
+    /**
+     * Converts a lexical error to JSON format.
+     * @param error The error to convert
+     * @return The error in JSON format
+     */
+    static String errorToJson(ErrorHandler.LexicalError error) {
+        return String.format("""
+            {
+                "type": "%s",
+                "message": "%s",
+                "line": %d,
+                "column": %d%s
+            }""",
+            // Error type
+            error.getType(),
+            // Error message
+            escapeJsonString(error.getMessage()),
+            // Line and column of the error
+            error.getLine(),
+            error.getColumn(),
+            // Suggestion if available
+            error.getSuggestion() != null && !error.getSuggestion().isEmpty() 
+                ? String.format(",\n    \"suggestion\": \"%s\"", escapeJsonString(error.getSuggestion()))
+                : ""
+        );
+    }
+    
     /**
      * Escapes special characters in JSON strings.
      * 
@@ -577,33 +1180,56 @@ public class Main {
      * @param input The input string to be escaped.
      * @return The escaped JSON string.
      */
-    private String escapeJsonString(String input) {
+    static String escapeJsonString(String input) {
         // If the input is null, return an empty string
         if (input == null) {
             return "";
         }
         
-        // StringBuilder to accumulate the escaped result
-        StringBuilder escaped = new StringBuilder();
+        // Return the input itself when there is nothing to escape
+        int first = 0;
+        while (first < input.length() && !needsEscape(input.charAt(first))) {
+            first++;
+        }
+        if (first == input.length()) {
+            return input;
+        }
+        
+        // StringBuilder to accumulate the escaped result, starting with the part that needs no escaping
+        StringBuilder escaped = new StringBuilder(input.length() + 16).append(input, 0, first);
         
-        // Iterate over each character in the input
-        for (char ch : input.toCharArray()) {
+        // Iterate over the remaining characters
+        for (int i = first; i < input.length(); i++) {
+            char ch = input.charAt(i);
             // Append the corresponding escape sequence or the character itself
-            escaped.append(switch (ch) {
-                case '"' -> "\\\"";   // Escape double quotes
-                case '\\' -> "\\\\";  // Escape backslashes
-                case '\b' -> "\\b";   // Escape backspace
-                case '\f' -> "\\f";   // Escape form feed
-                case '\n' -> "\\n";   // Escape newline
-                case '\r' -> "\\r";   // Escape carriage return
-                case '\t' -> "\\t";   // Escape tab
-                // Escape non-printable ASCII characters using unicode
-                default -> ch < ' ' || ch > '~' ? String.format("\\u%04x", (int) ch) : ch;
-            });
+            switch (ch) {
+                case '"' -> escaped.append("\\\"");   // Escape double quotes
+                case '\\' -> escaped.append("\\\\");  // Escape backslashes
+                case '\b' -> escaped.append("\\b");   // Escape backspace
+                case '\f' -> escaped.append("\\f");   // Escape form feed
+                case '\n' -> escaped.append("\\n");   // Escape newline
+                case '\r' -> escaped.append("\\r");   // Escape carriage return
+                case '\t' -> escaped.append("\\t");   // Escape tab
+                default -> {
+                    if (needsEscape(ch)) {
+                        // Escape non-printable and non-ASCII characters using unicode
+                        escaped.append("\\u");
+                        for (int shift = 12; shift >= 0; shift -= 4) {
+                            escaped.append(Character.forDigit((ch >> shift) & 0xF, 16));
+                        }
+                    } else {
+                        escaped.append(ch);
+                    }
+                }
+            }
         }
         // Return the escaped string
         return escaped.toString();
     }
+
+    private static boolean needsEscape(char ch) {
+        return ch < ' ' || ch > '~' || ch == '"' || ch == '\\';
+    }
     
     /**
      * Cleans up resources by closing the scanner if it is not null.
@@ -619,18 +1245,4 @@ public class Main {
             scanner.close();
         }
     }
-
-    /**
-     * Filters out whitespace tokens from the token list.
-     * This should be done before passing tokens to the parser.
-     * 
-     * @param tokens The original list of tokens
-     * @return A new list with whitespace tokens removed
-     */
-    private List<Token> filterWhitespaceTokens(List<Token> tokens) {
-        return tokens.stream()
-            .filter(token -> token.getType() != TokenType.WHITESPACE && 
-                            token.getType() != TokenType.COMMENT) // Also filter comments
-            .collect(Collectors.toList());
-    }
 }
\ No newline at end of file
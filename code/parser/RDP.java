@@ -1,15 +1,17 @@
 package parser;
 
-import lexer.Token;
+import lexer.TokenStream;
 import lexer.TokenType;
+import util.ParseTrace;
 import util.SyntaxErrorHandler;
-import java.util.List;
+import util.SyntaxErrorHandler.SyntaxError;
 import java.util.Set;
 import java.util.HashSet;
 import java.util.Arrays;
+import java.util.List;
 
 public class RDP {
-    private final List<Token> tokens;
+    private final TokenStream tokens;
     private final SyntaxErrorHandler errorHandler;
     private int current = 0;
 
@@ -35,7 +37,7 @@ public class RDP {
         Arrays.asList("static", "final", "abstract", "native", "strictfp")
     );
 
-    public RDP(List<Token> tokens) {
+    public RDP(TokenStream tokens) {
         this.tokens = tokens;
         this.errorHandler = new SyntaxErrorHandler();
     }
@@ -43,6 +45,20 @@ public class RDP {
     public void parse() {
         parseClass();
         errorHandler.printErrors();
+        if (ParseTrace.ENABLED && errorHandler.hasErrors()) {
+            ParseTrace.dump(System.err);
+        }
+    }
+
+    /**
+     * Parses the tokens without printing anything, for callers that report
+     * the syntax errors themselves.
+     *
+     * @return The syntax errors found.
+     */
+    public List<SyntaxError> check() {
+        parseClass();
+        return errorHandler.getErrors();
     }
 
     private void parseClass() {
@@ -52,7 +68,10 @@ public class RDP {
         boolean hasError = false;
         
         while (currentState != State.END && !atEnd()) {
-            Token currentToken = peek();
+            int currentToken = peek();
+            if (ParseTrace.ENABLED) {
+                ParseTrace.record(ParseTrace.Event.STATE, currentState, currentToken, 0);
+            }
             
             switch (currentState) {
                 case START:
@@ -60,8 +79,8 @@ public class RDP {
                         if (hasAccessModifier) {
                             errorHandler.reportError(
                                 "Duplicate access modifier",
-                                currentToken.getLine(),
-                                currentToken.getColumn(),
+                                tokens.line(currentToken),
+                                tokens.column(currentToken),
                                 "Only one access modifier is allowed"
                             );
                             hasError = true;
@@ -79,13 +98,13 @@ public class RDP {
                     } else {
                         errorHandler.reportError(
                             "Expected class declaration",
-                            currentToken.getLine(),
-                            currentToken.getColumn(),
+                            tokens.line(currentToken),
+                            tokens.column(currentToken),
                             "Class declaration should start with a modifier or 'class' keyword"
                         );
                         hasError = true;
                         // Try to continue parsing
-                        if (currentToken.getType() == TokenType.DELIM && currentToken.getLexeme().equals("{")) {
+                        if (tokens.is(currentToken, TokenType.DELIM, "{")) {
                             currentState = State.OPEN_BRACE;
                         } else {
                             advance();
@@ -105,20 +124,20 @@ public class RDP {
                     } else {
                         errorHandler.reportError(
                             "Expected class keyword",
-                            currentToken.getLine(),
-                            currentToken.getColumn(),
+                            tokens.line(currentToken),
+                            tokens.column(currentToken),
                             "Add 'class' keyword here"
                         );
                         hasError = true;
                         // Check if we can continue parsing
-                        if (currentToken.getType() == TokenType.IDENTIFIER) {
+                        if (tokens.type(currentToken) == TokenType.IDENTIFIER) {
                             advance();
                             currentState = State.CLASS_NAME;
-                        } else if (currentToken.getType() == TokenType.DELIM && currentToken.getLexeme().equals("{")) {
+                        } else if (tokens.is(currentToken, TokenType.DELIM, "{")) {
                             errorHandler.reportError(
                                 "Expected class name",
-                                currentToken.getLine(),
-                                currentToken.getColumn(),
+                                tokens.line(currentToken),
+                                tokens.column(currentToken),
                                 "Add a class identifier before '{'"
                             );
                             currentState = State.OPEN_BRACE;
@@ -129,9 +148,9 @@ public class RDP {
                     break;
 
                 case CLASS_NAME:
-                    if (currentToken.getType() == TokenType.IDENTIFIER) {
+                    if (tokens.type(currentToken) == TokenType.IDENTIFIER) {
                         advance(); // Consume the class name
-                        Token nextToken = peek();
+                        int nextToken = peek();
                         if (isClassInheritance(nextToken) || isInterfaceInheritance(nextToken)) {
                             currentState = State.INHERITANCE;
                         } else if (isOpenBrace(nextToken)) {
@@ -140,8 +159,8 @@ public class RDP {
                         } else {
                             errorHandler.reportError(
                                 "Expected opening brace '{' or inheritance operator ':>>' or ':>'",
-                                nextToken.getLine(),
-                                nextToken.getColumn(),
+                                tokens.line(nextToken),
+                                tokens.column(nextToken),
                                 "Add '{' to start class body or specify inheritance using ':>' or ':>>'"
                             );
                             hasError = true;
@@ -150,8 +169,8 @@ public class RDP {
                     } else {
                         errorHandler.reportError(
                             "Expected class name",
-                            currentToken.getLine(),
-                            currentToken.getColumn(),
+                            tokens.line(currentToken),
+                            tokens.column(currentToken),
                             "Add a valid identifier for the class name"
                         );
                         hasError = true;
@@ -171,8 +190,8 @@ public class RDP {
                             if (foundClassInheritance) {
                                 errorHandler.reportError(
                                     "Multiple class inheritance is not allowed",
-                                    currentToken.getLine(),
-                                    currentToken.getColumn(),
+                                    tokens.line(currentToken),
+                                    tokens.column(currentToken),
                                     "A class can extend only one parent class."
                                 );
                 
@@ -189,8 +208,8 @@ public class RDP {
                             if (!match(TokenType.IDENTIFIER)) {
                                 errorHandler.reportError(
                                     "Expected class name after ':>'",
-                                    peek().getLine(),
-                                    peek().getColumn(),
+                                    tokens.line(peek()),
+                                    tokens.column(peek()),
                                     "Provide a valid class name after ':>'"
                                 );
                 
@@ -210,8 +229,8 @@ public class RDP {
                             if (!match(TokenType.IDENTIFIER)) {
                                 errorHandler.reportError(
                                     "Expected interface name after ':>>'",
-                                    peek().getLine(),
-                                    peek().getColumn(),
+                                    tokens.line(peek()),
+                                    tokens.column(peek()),
                                     "Provide a valid interface name after ':>>'"
                                 );
                 
@@ -228,8 +247,8 @@ public class RDP {
                                 if (!match(TokenType.IDENTIFIER)) {
                                     errorHandler.reportError(
                                         "Expected interface name after comma",
-                                        peek().getLine(),
-                                        peek().getColumn(),
+                                        tokens.line(peek()),
+                                        tokens.column(peek()),
                                         "Ensure proper syntax: Interface1, Interface2"
                                     );
                                     
@@ -251,8 +270,8 @@ public class RDP {
                     if (!isOpenBrace(peek())) {
                         errorHandler.reportError(
                             "Expected opening brace '{'",
-                            peek().getLine(),
-                            peek().getColumn(),
+                            tokens.line(peek()),
+                            tokens.column(peek()),
                             "Add '{' after class declaration"
                         );
                 
@@ -267,7 +286,7 @@ public class RDP {
                     break;                                                                                                                                                                    
 
                 case OPEN_BRACE:
-                    if (currentToken.getType() == TokenType.DELIM && currentToken.getLexeme().equals("}")) {
+                    if (tokens.is(currentToken, TokenType.DELIM, "}")) {
                         advance();
                         currentState = State.CLOSE_BRACE;
                     } else {
@@ -284,58 +303,58 @@ public class RDP {
         }
     }
 
-    private boolean isAccessModifier(Token token) {
-        return token.getType() == TokenType.RESERVED && 
-                ACCESS_MODIFIERS.contains(token.getLexeme());
+    private boolean isAccessModifier(int token) {
+        return tokens.type(token) == TokenType.RESERVED && 
+                ACCESS_MODIFIERS.contains(tokens.lexeme(token));
     }
 
-    private boolean isNonAccessModifier(Token token) {
-        return token.getType() == TokenType.RESERVED && 
-                NON_ACCESS_MODIFIERS.contains(token.getLexeme());
+    private boolean isNonAccessModifier(int token) {
+        return tokens.type(token) == TokenType.RESERVED && 
+                NON_ACCESS_MODIFIERS.contains(tokens.lexeme(token));
     }
 
-    private boolean isClassKeyword(Token token) {
-        return token.getType() == TokenType.RESERVED && 
-                token.getLexeme().equals("class");
+    private boolean isClassKeyword(int token) {
+        return tokens.type(token) == TokenType.RESERVED && 
+                tokens.lexemeEquals(token, "class");
     }
 
-    private boolean isClassInheritance(Token token) {
-        return token.getType() == TokenType.INHERIT_OP && token.getLexeme().equals(":>");
+    private boolean isClassInheritance(int token) {
+        return tokens.is(token, TokenType.INHERIT_OP, ":>");
     }
 
-    private boolean isInterfaceInheritance(Token token) {
-        return token.getType() == TokenType.INHERIT_OP && token.getLexeme().equals(":>>");
+    private boolean isInterfaceInheritance(int token) {
+        return tokens.is(token, TokenType.INHERIT_OP, ":>>");
     }
 
-    private boolean isOpenBrace(Token token) {
-        return token.getType() == TokenType.DELIM && token.getLexeme().equals("{");
+    private boolean isOpenBrace(int token) {
+        return tokens.is(token, TokenType.DELIM, "{");
     }
 
-    private boolean isComma(Token token) {
-        return token.getType() == TokenType.PUNC_DELIM && token.getLexeme().equals(",");
+    private boolean isComma(int token) {
+        return tokens.is(token, TokenType.PUNC_DELIM, ",");
     }
 
     // Helper methods
-    private Token advance() {
+    private int advance() {
         if (!atEnd()) current++;
         return previous();
     }
 
     private boolean atEnd() {
-        return peek().getType() == TokenType.EOF;
+        return tokens.type(peek()) == TokenType.EOF;
     }
 
-    private Token peek() {
-        return tokens.get(current);
+    private int peek() {
+        return current;
     }
 
-    private Token previous() {
-        return tokens.get(current - 1);
+    private int previous() {
+        return current - 1;
     }
 
     private boolean match(TokenType expected) {
         if (atEnd()) return false;
-        if (peek().getType() == expected) {
+        if (tokens.type(peek()) == expected) {
             advance();
             return true;
         }
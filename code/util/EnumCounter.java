@@ -0,0 +1,88 @@
+package util;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Counts occurrences of the constants of an enum in a long array indexed by
+ * ordinal, so counting costs one array increment and counters of different
+ * sources can be added together without going back over what was counted.
+ *
+ * @param <E> The enum whose constants are counted.
+ */
+public class EnumCounter<E extends Enum<E>> {
+    private final Class<E> type;
+    private final E[] constants;
+    private final long[] counts;
+
+    /**
+     * Constructs a counter with every count at zero.
+     *
+     * @param type The enum whose constants are counted.
+     */
+    public EnumCounter(Class<E> type) {
+        this.type = type;
+        this.constants = type.getEnumConstants();
+        this.counts = new long[constants.length];
+    }
+
+    /**
+     * Constructs a counter holding the same counts as another.
+     *
+     * @param other The counter to copy.
+     */
+    public EnumCounter(EnumCounter<E> other) {
+        this(other.type);
+        addAll(other);
+    }
+
+    public void increment(E constant) {
+        counts[constant.ordinal()]++;
+    }
+
+    public void add(E constant, long amount) {
+        counts[constant.ordinal()] += amount;
+    }
+
+    /**
+     * Adds the counts of another counter to this one.
+     *
+     * @param other The counter to add.
+     */
+    public void addAll(EnumCounter<E> other) {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+    }
+
+    public long get(E constant) {
+        return counts[constant.ordinal()];
+    }
+
+    public long total() {
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        return total;
+    }
+
+    public boolean isEmpty() {
+        return total() == 0;
+    }
+
+    /**
+     * Returns the counts that are not zero, in the declaration order of the enum.
+     *
+     * @return A map from each counted constant to its count.
+     */
+    public Map<E, Long> toMap() {
+        Map<E, Long> map = new EnumMap<>(type);
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] != 0) {
+                map.put(constants[i], counts[i]);
+            }
+        }
+        return map;
+    }
+}
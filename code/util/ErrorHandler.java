@@ -12,6 +12,9 @@ public class ErrorHandler {
     // List to store all encountered errors
     private final List<LexicalError> errors;
     
+    // Number of errors reported of each type, kept when the errors are cleared
+    private final EnumCounter<ErrorType> errorCounts;
+    
     // Current file being processed
     private String currentFile;
     
@@ -96,6 +99,7 @@ public class ErrorHandler {
 
     public ErrorHandler(boolean immediateLogging) {
         this.errors = new ArrayList<>();
+        this.errorCounts = new EnumCounter<>(ErrorType.class);
         this.immediateLogging = immediateLogging;
     }
 
@@ -105,6 +109,7 @@ public class ErrorHandler {
     public void reportError(ErrorType type, String message, int line, int column, String suggestion) {
         LexicalError error = new LexicalError(type, message, line, column, suggestion);
         errors.add(error);
+        errorCounts.increment(type);
         
         if (immediateLogging) {
             System.err.println(error);
@@ -239,6 +244,21 @@ public class ErrorHandler {
         return new ArrayList<>(errors);
     }
 
+    /**
+     * Returns the number of recorded errors without copying them
+     */
+    public int getErrorCount() {
+        return errors.size();
+    }
+
+    /**
+     * Returns the number of errors reported of each type, including errors
+     * that have since been cleared
+     */
+    public EnumCounter<ErrorType> getErrorCounts() {
+        return new EnumCounter<>(errorCounts);
+    }
+
     /**
      * Returns whether any errors have been recorded
      */
@@ -262,7 +282,7 @@ public class ErrorHandler {
     }
 
     /**
-     * Clears all recorded errors
+     * Clears all recorded errors. The error counts are kept.
      */
     public void clearErrors() {
         errors.clear();
@@ -0,0 +1,199 @@
+package util;
+
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * SourceReader backend for large inputs. Memory-maps the file through
+ * {@link FileChannel#map} and decodes it into a large char window, so that
+ * reading and peeking are plain index operations with no mark/reset.
+ * Line and column tracking is shared with {@link SourceReader}.
+ */
+public class MappedSourceReader extends SourceReader {
+    // Number of chars decoded ahead of the read position
+    private static final int WINDOW_SIZE = 1 << 20;
+
+    // Largest region mapped at once (a single mapping cannot exceed 2 GB)
+    private static final long MAX_SEGMENT = Integer.MAX_VALUE;
+
+    private final FileChannel channel;
+    private final CharsetDecoder decoder;
+    private final long channelSize;
+    private final char[] window = new char[WINDOW_SIZE];
+    private int position = 0;     // Index of the next unread char in the window
+    private int limit = 0;        // Number of decoded chars in the window
+    private MappedByteBuffer segment;
+    private long segmentStart = 0;
+    private boolean inputEnded = false;
+
+    /**
+     * Constructs a new MappedSourceReader instance.
+     *
+     * @param filePath the path to the file to read
+     * @param charset  the charset to use for decoding the file
+     * @throws SourceReaderException if an error occurs while mapping the file
+     */
+    public MappedSourceReader(String filePath, Charset charset) throws SourceReaderException {
+        super(filePath);
+
+        // Malformed input is replaced, matching the InputStreamReader used by SourceReader
+        this.decoder = charset.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+        try {
+            this.channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ);
+            this.channelSize = channel.size();
+            mapSegment(0);
+        } catch (IOException e) {
+            throw new SourceReaderException("Error mapping file: " + filePath, e);
+        }
+    }
+
+    /**
+     * Reads the next character from the window and advances the position.
+     *
+     * @return the next character, or EOF if the end of the file is reached
+     * @throws SourceReaderException if an error occurs while decoding the file
+     */
+    @Override
+    public char readNext() throws SourceReaderException {
+        if (position >= limit && !fill(1)) {
+            return advance(-1);
+        }
+        return advance(window[position++]);
+    }
+
+    /**
+     * Peeks at the next character in the window without advancing the position.
+     *
+     * @return the next character, or EOF if the end of the file is reached
+     * @throws SourceReaderException if an error occurs while decoding the file
+     */
+    @Override
+    public char peek() throws SourceReaderException {
+        if (position >= limit && !fill(1)) {
+            return EOF;
+        }
+        return window[position];
+    }
+
+    /**
+     * Peeks at the character {@code k} positions past the next one in the window.
+     *
+     * @param k offset from the next character, less than {@link #LOOKAHEAD_CAPACITY}
+     * @return the character at that offset, or EOF if it lies past the end of the file
+     * @throws SourceReaderException if an error occurs while decoding the file
+     */
+    @Override
+    public char peek(int k) throws SourceReaderException {
+        checkLookahead(k);
+        if (limit - position <= k) {
+            fill(k + 1);
+        }
+        return position + k < limit ? window[position + k] : EOF;
+    }
+
+    /**
+     * Peeks multiple characters ahead without advancing the position.
+     *
+     * @param count number of characters to peek ahead, at most {@link #LOOKAHEAD_CAPACITY}
+     * @return string containing the peeked characters
+     * @throws SourceReaderException if an error occurs while decoding the file
+     */
+    @Override
+    public String peekAhead(int count) throws SourceReaderException {
+        if (count <= 0) {
+            return "";
+        }
+        checkLookahead(count - 1);
+
+        if (limit - position < count) {
+            fill(count);
+        }
+
+        int available = Math.min(count, limit - position);
+        if (available <= 0) {
+            return String.valueOf(EOF);
+        }
+        return new String(window, position, available);
+    }
+
+    /**
+     * Ensures at least {@code needed} chars are available from the read position,
+     * compacting the window and decoding more of the mapped file as required.
+     *
+     * @param needed number of chars the caller wants to look at
+     * @return true if at least one char is available
+     * @throws SourceReaderException if an error occurs while decoding the file
+     */
+    private boolean fill(int needed) throws SourceReaderException {
+        if (position > 0) {
+            System.arraycopy(window, position, window, 0, limit - position);
+            limit -= position;
+            position = 0;
+        }
+
+        CharBuffer target = CharBuffer.wrap(window, limit, WINDOW_SIZE - limit);
+        try {
+            while (limit < needed && !inputEnded) {
+                boolean lastSegment = segmentStart + segment.limit() >= channelSize;
+                CoderResult result = decoder.decode(segment, target, lastSegment);
+                if (result.isError()) {
+                    result.throwException();
+                }
+
+                if (result.isUnderflow()) {
+                    if (lastSegment) {
+                        decoder.flush(target);
+                        inputEnded = true;
+                    } else {
+                        // Remap from the first undecoded byte so split sequences stay intact
+                        mapSegment(segmentStart + segment.position());
+                    }
+                }
+                limit = target.position();
+
+                if (result.isOverflow()) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            throw new SourceReaderException(
+                "Error decoding file at " + getCurrentPosition(), e);
+        }
+
+        return position < limit;
+    }
+
+    /**
+     * Maps the region of the file that starts at the given byte offset.
+     */
+    private void mapSegment(long start) throws IOException {
+        long size = Math.min(MAX_SEGMENT, channelSize - start);
+        segment = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+        segmentStart = start;
+    }
+
+    /**
+     * Closes the underlying file channel.
+     *
+     * @throws SourceReaderException if an error occurs while closing the channel
+     */
+    @Override
+    public void close() throws SourceReaderException {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new SourceReaderException("Error closing file channel", e);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package util;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Trace of what the parsers do, for finding out why a parse went wrong.
+ *
+ * Tracing is switched on with the system property {@code xpresso.trace}. The
+ * check is the static final {@link #ENABLED}, so callers that guard on it cost
+ * nothing when tracing is off. When it is on, each event is kept as a few ints
+ * in a ring of the most recent events, which {@link #dump} prints after the
+ * fact, and is also written as a line to the file named by
+ * {@code xpresso.trace.file} if that property is set.
+ *
+ * An event has a kind, an optional subject (a parser state, nonterminal or
+ * error type) and two numbers whose meaning depends on the kind.
+ */
+public final class ParseTrace {
+    public static final boolean ENABLED = Boolean.getBoolean("xpresso.trace");
+
+    private static final int CAPACITY = 4096;
+    // Ints per event: kind, subject type, subject ordinal, first and second number
+    private static final int FIELDS = 5;
+    private static final int NO_SUBJECT = -1;
+
+    /**
+     * The kinds of events, with the names of their two numbers.
+     */
+    public enum Event {
+        PUSH("token", "production"),
+        POP("token", "production"),
+        MATCH("token", "element"),
+        FAIL("token", "element"),
+        RETRY("token", "production"),
+        MEMO("token", "end"),
+        STATE("token", null),
+        ERROR("line", "column");
+
+        private final String first;
+        private final String second;
+
+        Event(String first, String second) {
+            this.first = first;
+            this.second = second;
+        }
+    }
+
+    private static final int[] ring = ENABLED ? new int[CAPACITY * FIELDS] : null;
+    private static final List<Class<? extends Enum<?>>> subjectTypes = new ArrayList<>();
+    private static long recorded;
+    private static PrintWriter sink;
+
+    static {
+        String file = System.getProperty("xpresso.trace.file");
+        if (ENABLED && file != null) {
+            try {
+                sink = new PrintWriter(new FileWriter(file));
+                Runtime.getRuntime().addShutdownHook(new Thread(ParseTrace::closeSink));
+            } catch (IOException e) {
+                System.err.println("Error opening trace file " + file + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private ParseTrace() {
+    }
+
+    /**
+     * Records an event. Callers should check {@link #ENABLED} first.
+     *
+     * @param event The kind of event.
+     * @param subject The state, nonterminal or error type the event is about, or null.
+     * @param first The first number of the event.
+     * @param second The second number of the event.
+     */
+    public static synchronized void record(Event event, Enum<?> subject, int first, int second) {
+        if (!ENABLED) {
+            return;
+        }
+        int slot = (int) (recorded % CAPACITY) * FIELDS;
+        ring[slot] = event.ordinal();
+        ring[slot + 1] = subject == null ? NO_SUBJECT : subjectType(subject);
+        ring[slot + 2] = subject == null ? NO_SUBJECT : subject.ordinal();
+        ring[slot + 3] = first;
+        ring[slot + 4] = second;
+        if (sink != null) {
+            sink.println(format(recorded, slot));
+        }
+        recorded++;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static int subjectType(Enum<?> subject) {
+        Class<? extends Enum<?>> type = (Class<? extends Enum<?>>) subject.getDeclaringClass();
+        int index = subjectTypes.indexOf(type);
+        if (index < 0) {
+            index = subjectTypes.size();
+            subjectTypes.add(type);
+        }
+        return index;
+    }
+
+    /**
+     * Prints the most recent events, oldest first.
+     *
+     * @param out The stream to print to.
+     */
+    public static synchronized void dump(PrintStream out) {
+        if (!ENABLED) {
+            return;
+        }
+        long from = Math.max(0, recorded - CAPACITY);
+        out.println("\nLast " + (recorded - from) + " of " + recorded + " parser trace events:");
+        for (long number = from; number < recorded; number++) {
+            out.println(format(number, (int) (number % CAPACITY) * FIELDS));
+        }
+    }
+
+    private static String format(long number, int slot) {
+        Event event = Event.values()[ring[slot]];
+        StringBuilder line = new StringBuilder();
+        line.append('#').append(number).append(' ').append(event);
+        if (ring[slot + 1] != NO_SUBJECT) {
+            line.append(' ').append(subjectTypes.get(ring[slot + 1]).getEnumConstants()[ring[slot + 2]]);
+        }
+        line.append(' ').append(event.first).append('=').append(ring[slot + 3]);
+        if (event.second != null) {
+            line.append(' ').append(event.second).append('=').append(ring[slot + 4]);
+        }
+        return line.toString();
+    }
+
+    private static synchronized void closeSink() {
+        sink.close();
+    }
+}
@@ -0,0 +1,188 @@
+package util;
+
+import java.util.Arrays;
+
+/**
+ * Holds the characters consumed from a source file so that tokens can refer to
+ * their lexemes by offset and length instead of copying them.
+ * Characters are stored in fixed-size chunks, so growing the buffer never copies
+ * what has already been read.
+ */
+public class SourceBuffer implements CharSequence {
+    private static final int CHUNK_BITS = 16;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private char[][] chunks = new char[4][];
+    private int length = 0;
+    private int releasedChunks = 0; // Chunks before this index have been freed
+    private int firstReadable = 0;  // Offset of the first character that can still be read
+
+    /**
+     * Constructs an empty buffer for text that starts at the beginning of the source.
+     */
+    public SourceBuffer() {
+        this(0);
+    }
+
+    /**
+     * Constructs an empty buffer for text that starts at the given offset of the
+     * source, for reading that resumes part way through a file. Characters before
+     * the offset cannot be read.
+     *
+     * @param startOffset the offset of the first character that will be appended
+     */
+    public SourceBuffer(int startOffset) {
+        releasedChunks = startOffset >>> CHUNK_BITS;
+        if (releasedChunks >= chunks.length) {
+            chunks = new char[releasedChunks + 4][];
+        }
+        length = startOffset;
+        firstReadable = startOffset;
+    }
+
+    /**
+     * Appends a character to the end of the buffer.
+     *
+     * @param c the character to append
+     */
+    public void append(char c) {
+        int chunk = length >>> CHUNK_BITS;
+        if (chunk == chunks.length) {
+            chunks = Arrays.copyOf(chunks, chunks.length * 2);
+        }
+        if (chunks[chunk] == null) {
+            chunks[chunk] = new char[CHUNK_SIZE];
+        }
+        chunks[chunk][length & CHUNK_MASK] = c;
+        length++;
+    }
+
+    /**
+     * Appends a sequence of characters to the end of the buffer.
+     *
+     * @param text the characters to append
+     */
+    public void append(CharSequence text) {
+        for (int i = 0; i < text.length(); i++) {
+            append(text.charAt(i));
+        }
+    }
+
+    /**
+     * Appends a range of a char array to the end of the buffer, a chunk at a time.
+     *
+     * @param chars  the characters to append
+     * @param start  the index of the first character to append
+     * @param count  the number of characters to append
+     */
+    public void append(char[] chars, int start, int count) {
+        while (count > 0) {
+            int chunk = length >>> CHUNK_BITS;
+            if (chunk == chunks.length) {
+                chunks = Arrays.copyOf(chunks, chunks.length * 2);
+            }
+            if (chunks[chunk] == null) {
+                chunks[chunk] = new char[CHUNK_SIZE];
+            }
+            int n = Math.min(count, CHUNK_SIZE - (length & CHUNK_MASK));
+            System.arraycopy(chars, start, chunks[chunk], length & CHUNK_MASK, n);
+            length += n;
+            start += n;
+            count -= n;
+        }
+    }
+
+    /**
+     * Replaces the characters between start and end with the given text.
+     * The characters after end are moved, so this costs time proportional to
+     * the distance from start to the end of the buffer.
+     *
+     * @param start the start index, inclusive
+     * @param end   the end index, exclusive
+     * @param text  the replacement characters
+     */
+    public void replace(int start, int end, CharSequence text) {
+        if (start < firstReadable || end > length || start > end) {
+            throw new IndexOutOfBoundsException(
+                "Range [" + start + ", " + end + ") outside buffer of length " + length);
+        }
+        char[] tail = new char[length - end];
+        for (int i = end; i < length; ) {
+            int n = Math.min(length - i, CHUNK_SIZE - (i & CHUNK_MASK));
+            System.arraycopy(chunks[i >>> CHUNK_BITS], i & CHUNK_MASK, tail, i - end, n);
+            i += n;
+        }
+        length = start;
+        append(text);
+        append(tail, 0, tail.length);
+    }
+
+    /**
+     * Frees the chunks that lie entirely before the given offset. Offsets keep
+     * counting from the start of the source, but characters before the first
+     * retained chunk can no longer be read.
+     *
+     * @param offset the first offset that must remain readable
+     */
+    public void release(int offset) {
+        int firstKept = Math.min(offset, length) >>> CHUNK_BITS;
+        for (int chunk = releasedChunks; chunk < firstKept; chunk++) {
+            chunks[chunk] = null;
+        }
+        releasedChunks = Math.max(releasedChunks, firstKept);
+        firstReadable = Math.max(firstReadable, releasedChunks << CHUNK_BITS);
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < firstReadable || index >= length) {
+            throw new IndexOutOfBoundsException("Index " + index + " outside buffer of length " + length);
+        }
+        return chunks[index >>> CHUNK_BITS][index & CHUNK_MASK];
+    }
+
+    /**
+     * Returns a copy of the characters between start and end, as with {@link #substring}.
+     */
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return substring(start, end);
+    }
+
+    /**
+     * Copies the characters between start and end into a new String.
+     *
+     * @param start the start index, inclusive
+     * @param end   the end index, exclusive
+     * @return the characters as a String
+     */
+    public String substring(int start, int end) {
+        if (start < firstReadable || end > length || start > end) {
+            throw new IndexOutOfBoundsException(
+                "Range [" + start + ", " + end + ") outside buffer of length " + length);
+        }
+
+        // Fast path for ranges that do not cross a chunk boundary
+        int chunk = start >>> CHUNK_BITS;
+        if (chunk == (end - 1) >>> CHUNK_BITS || start == end) {
+            return start == end ? "" : new String(chunks[chunk], start & CHUNK_MASK, end - start);
+        }
+
+        char[] chars = new char[end - start];
+        for (int i = start; i < end; i++) {
+            chars[i - start] = chunks[i >>> CHUNK_BITS][i & CHUNK_MASK];
+        }
+        return new String(chars);
+    }
+
+    @Override
+    public String toString() {
+        return substring(0, length);
+    }
+}
@@ -0,0 +1,82 @@
+package util;
+
+/**
+ * SourceReader over text that is already held in a {@link SourceBuffer}.
+ * It can start at any offset with a given line and column, which lets several
+ * lexers work on different parts of the same file at once. Reading only looks
+ * at the buffer, so concurrent readers over one buffer are safe as long as
+ * nothing appends to it.
+ */
+public class SourceBufferReader extends SourceReader {
+    private final SourceBuffer text;
+    private final int end;
+    private int position;
+
+    /**
+     * Constructs a reader over the given buffer.
+     *
+     * @param filePath the path of the file the text came from
+     * @param text     the buffer holding the text
+     * @param offset   the offset of the first character to read
+     * @param line     the line number at that offset
+     * @param column   the column number at that offset
+     */
+    public SourceBufferReader(String filePath, SourceBuffer text, int offset, int line, int column) {
+        super(filePath, text, offset, line, column);
+        this.text = text;
+        this.end = text.length();
+        this.position = offset;
+    }
+
+    /**
+     * Reads the next character from the buffer and advances the position.
+     *
+     * @return the next character, or EOF at the end of the buffer
+     */
+    @Override
+    public char readNext() {
+        return position < end ? advance(text.charAt(position++)) : advance(-1);
+    }
+
+    /**
+     * Peeks at the next character without advancing the position.
+     *
+     * @return the next character, or EOF at the end of the buffer
+     */
+    @Override
+    public char peek() {
+        return position < end ? text.charAt(position) : EOF;
+    }
+
+    /**
+     * Peeks at the character {@code k} positions past the next one.
+     *
+     * @param k offset from the next character, less than {@link #LOOKAHEAD_CAPACITY}
+     * @return the character at that offset, or EOF if it lies past the end of the buffer
+     */
+    @Override
+    public char peek(int k) {
+        checkLookahead(k);
+        return position + k < end ? text.charAt(position + k) : EOF;
+    }
+
+    /**
+     * Peeks multiple characters ahead without advancing the position.
+     *
+     * @param count number of characters to peek ahead, at most {@link #LOOKAHEAD_CAPACITY}
+     * @return string containing the peeked characters
+     */
+    @Override
+    public String peekAhead(int count) {
+        if (count <= 0) {
+            return "";
+        }
+        checkLookahead(count - 1);
+
+        int available = Math.min(count, end - position);
+        if (available <= 0) {
+            return String.valueOf(EOF);
+        }
+        return text.substring(position, position + available);
+    }
+}
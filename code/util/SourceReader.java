@@ -32,15 +32,31 @@ public class SourceReader implements AutoCloseable {
 
     public static final char EOF = (char) -1;
 
+    // Files at least this large are read through MappedSourceReader by open()
+    public static final long MAPPED_THRESHOLD = 16L * 1024 * 1024;
+
+    // Number of characters that can be examined ahead of the read position (power of two)
+    public static final int LOOKAHEAD_CAPACITY = 16;
+    private static final int LOOKAHEAD_MASK = LOOKAHEAD_CAPACITY - 1;
+
     private final BufferedReader reader;
     private final String filePath;
     private int line = 1;
     private int column = 0;
     private char lastChar = EOF;
-    private long fileSize;
+    private final long fileSize;
     private long bytesRead = 0;
     private boolean fileEnded = false;
 
+    // Characters consumed so far; tokens refer to their lexemes by offset into it
+    private final SourceBuffer source;
+    private int offset = 0;
+
+    // Ring buffer of characters read from the reader but not yet consumed (-1 marks the end of the file)
+    private final int[] lookahead = new int[LOOKAHEAD_CAPACITY];
+    private int lookaheadStart = 0;
+    private int lookaheadCount = 0;
+
     /**
      * Constructs a new SourceReader instance.
      * 
@@ -50,19 +66,11 @@ public class SourceReader implements AutoCloseable {
      */
     public SourceReader(String filePath, Charset charset) throws SourceReaderException {
         this.filePath = filePath;
+        this.source = new SourceBuffer();
         
         try {
-            // Validate file existence and readability
-            Path path = Paths.get(filePath);
-            if (!Files.exists(path)) {
-                throw new SourceReaderException("File does not exist: " + filePath);
-            }
-            if (!Files.isReadable(path)) {
-                throw new SourceReaderException("File is not readable: " + filePath);
-            }
-            
-            // Get file size for progress tracking
-            this.fileSize = Files.size(path);
+            // Validate file and get its size for progress tracking
+            this.fileSize = validateFile(filePath);
             
             // Initialize reader
             reader = new BufferedReader(new InputStreamReader(new FileInputStream(filePath), charset));
@@ -71,6 +79,118 @@ public class SourceReader implements AutoCloseable {
         }
     }
 
+    /**
+     * Constructs a SourceReader that resumes part way through a file, for sources
+     * that are read again after more text has been appended to them.
+     *
+     * @param filePath   the path to the file to read
+     * @param charset    the charset to use for reading the file
+     * @param byteOffset the position in the file of the first byte to read
+     * @param offset     the character offset of that position
+     * @param line       the line number at that position
+     * @param column     the column number at that position
+     * @throws SourceReaderException if an error occurs while opening the file
+     */
+    public SourceReader(String filePath, Charset charset, long byteOffset, int offset, int line, int column)
+            throws SourceReaderException {
+        this.filePath = filePath;
+        this.source = new SourceBuffer(offset);
+        this.offset = offset;
+        this.line = line;
+        this.column = column;
+        this.bytesRead = byteOffset;
+
+        try {
+            this.fileSize = validateFile(filePath);
+            if (byteOffset > fileSize) {
+                throw new SourceReaderException("Resume position " + byteOffset + " is past the end of file: " + filePath);
+            }
+
+            FileInputStream input = new FileInputStream(filePath);
+            input.getChannel().position(byteOffset);
+            reader = new BufferedReader(new InputStreamReader(input, charset));
+        } catch (SourceReaderException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new SourceReaderException("Error initializing reader for file: " + filePath, e);
+        }
+    }
+
+    /**
+     * Constructs a SourceReader without an underlying BufferedReader.
+     * Used by subclasses that supply their own character source.
+     * 
+     * @param filePath the path to the file to read
+     * @throws SourceReaderException if the file does not exist or is not readable
+     */
+    protected SourceReader(String filePath) throws SourceReaderException {
+        this.filePath = filePath;
+        this.reader = null;
+        this.source = new SourceBuffer();
+        try {
+            this.fileSize = validateFile(filePath);
+        } catch (IOException e) {
+            throw new SourceReaderException("Error initializing reader for file: " + filePath, e);
+        }
+    }
+
+    /**
+     * Constructs a SourceReader positioned inside text already held in a SourceBuffer.
+     * Used by subclasses that read from memory; characters read this way are not
+     * appended to the buffer again.
+     * 
+     * @param filePath the path of the file the text came from
+     * @param source   the buffer holding the text
+     * @param offset   the offset of the first character to read
+     * @param line     the line number at that offset
+     * @param column   the column number at that offset
+     */
+    protected SourceReader(String filePath, SourceBuffer source, int offset, int line, int column) {
+        this.filePath = filePath;
+        this.reader = null;
+        this.fileSize = source.length();
+        this.source = source;
+        this.offset = offset;
+        this.line = line;
+        this.column = column;
+    }
+
+    /**
+     * Opens a reader for the given file, choosing the memory-mapped backend
+     * for files of at least {@link #MAPPED_THRESHOLD} bytes.
+     * 
+     * @param filePath the path to the file to read
+     * @param charset  the charset to use for reading the file
+     * @return a SourceReader suited to the size of the file
+     * @throws SourceReaderException if an error occurs while opening the file
+     */
+    public static SourceReader open(String filePath, Charset charset) throws SourceReaderException {
+        try {
+            if (Files.size(Paths.get(filePath)) >= MAPPED_THRESHOLD) {
+                return new MappedSourceReader(filePath, charset);
+            }
+        } catch (IOException e) {
+            // Fall through and let the constructor report the problem
+        }
+        return new SourceReader(filePath, charset);
+    }
+
+    /**
+     * Checks that the file exists and is readable.
+     * 
+     * @return the size of the file in bytes
+     */
+    private static long validateFile(String filePath) throws IOException {
+        Path path = Paths.get(filePath);
+        if (!Files.exists(path)) {
+            throw new SourceReaderException("File does not exist: " + filePath);
+        }
+        if (!Files.isReadable(path)) {
+            throw new SourceReaderException("File is not readable: " + filePath);
+        }
+        return Files.size(path);
+    }
+
     /**
      * Reads the next character from the file and advances the position.
      * 
@@ -79,27 +199,46 @@ public class SourceReader implements AutoCloseable {
      */
     public char readNext() throws SourceReaderException {
         try {
-            int read = reader.read();
-            if (read == -1) {
-                lastChar = EOF;
-                fileEnded = true;
-                return EOF;
+            if (lookaheadCount > 0) {
+                int read = lookahead[lookaheadStart];
+                lookaheadStart = (lookaheadStart + 1) & LOOKAHEAD_MASK;
+                lookaheadCount--;
+                return advance(read);
             }
+            return advance(reader.read());
+        } catch (IOException e) {
+            throw new SourceReaderException("Error reading from file at position " + bytesRead, e);
+        }
+    }
 
-            bytesRead++;
-            lastChar = (char) read;
+    /**
+     * Updates the line and column position for a character that has just been consumed.
+     * 
+     * @param read the character read, or -1 at the end of the file
+     * @return the character read, or EOF if the end of the file is reached
+     */
+    protected final char advance(int read) {
+        if (read == -1) {
+            lastChar = EOF;
+            fileEnded = true;
+            return EOF;
+        }
 
-            if (lastChar == '\n') {
-                line++;
-                column = 0;
-            } else {
-                column++;
-            }
+        bytesRead++;
+        lastChar = (char) read;
+        if (offset == source.length()) {
+            source.append(lastChar);
+        }
+        offset++;
 
-            return lastChar;
-        } catch (IOException e) {
-            throw new SourceReaderException("Error reading from file at position " + bytesRead, e);
+        if (lastChar == '\n') {
+            line++;
+            column = 0;
+        } else {
+            column++;
         }
+
+        return lastChar;
     }
 
     /**
@@ -109,21 +248,38 @@ public class SourceReader implements AutoCloseable {
      * @throws SourceReaderException if an error occurs while reading the file
      */
     public char peek() throws SourceReaderException {
+        return peek(0);
+    }
+
+    /**
+     * Peeks at the character {@code k} positions past the next one without advancing
+     * the position. {@code peek(0)} is the same as {@link #peek()}.
+     * 
+     * @param k offset from the next character, less than {@link #LOOKAHEAD_CAPACITY}
+     * @return the character at that offset, or EOF if it lies past the end of the file
+     * @throws SourceReaderException if an error occurs while reading the file
+     */
+    public char peek(int k) throws SourceReaderException {
+        checkLookahead(k);
         try {
-            reader.mark(1);
-            int read = reader.read();
-            reader.reset();
-            return read == -1 ? EOF : (char) read;
+            // Fill the ring buffer up to the requested offset
+            while (lookaheadCount <= k) {
+                lookahead[(lookaheadStart + lookaheadCount) & LOOKAHEAD_MASK] = reader.read();
+                lookaheadCount++;
+            }
         } catch (IOException e) {
             throw new SourceReaderException(
                 "Error peeking at file at line " + line + ", column " + column, e);
         }
+
+        int read = lookahead[(lookaheadStart + k) & LOOKAHEAD_MASK];
+        return read == -1 ? EOF : (char) read;
     }
 
     /**
      * Peeks multiple characters ahead without advancing the position.
      * 
-     * @param count number of characters to peek ahead
+     * @param count number of characters to peek ahead, at most {@link #LOOKAHEAD_CAPACITY}
      * @return string containing the peeked characters
      * @throws SourceReaderException if an error occurs while reading the file
      */
@@ -131,21 +287,26 @@ public class SourceReader implements AutoCloseable {
         if (count <= 0) {
             return "";
         }
+        checkLookahead(count - 1);
 
-        try {
-            reader.mark(count);
-            char[] chars = new char[count];
-            int read = reader.read(chars, 0, count);
-            reader.reset();
+        StringBuilder builder = new StringBuilder(count);
+        char current;
+        while (builder.length() < count && (current = peek(builder.length())) != EOF) {
+            builder.append(current);
+        }
 
-            if (read == -1) {
-                return String.valueOf(EOF);
-            }
+        return builder.length() == 0 ? String.valueOf(EOF) : builder.toString();
+    }
 
-            return new String(chars, 0, read);
-        } catch (IOException e) {
-            throw new SourceReaderException(
-                "Error peeking ahead " + count + " characters at line " + line + ", column " + column, e);
+    /**
+     * Rejects lookahead offsets beyond the ring buffer instead of silently capping them.
+     * 
+     * @param k offset from the next character
+     */
+    protected static void checkLookahead(int k) {
+        if (k < 0 || k >= LOOKAHEAD_CAPACITY) {
+            throw new IllegalArgumentException(
+                "Lookahead offset " + k + " outside 0.." + (LOOKAHEAD_CAPACITY - 1));
         }
     }
 
@@ -195,6 +356,22 @@ public class SourceReader implements AutoCloseable {
         return filePath;
     }
 
+    /**
+     * Returns the offset of the next character to be read, which is also the
+     * number of characters consumed so far.
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * Returns the buffer of characters consumed so far, or the buffer being read
+     * for readers over text held in memory.
+     */
+    public SourceBuffer getSource() {
+        return source;
+    }
+
     public char getLastChar() {
         return lastChar;
     }
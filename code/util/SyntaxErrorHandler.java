@@ -28,6 +28,22 @@ public class SyntaxErrorHandler {
             this.suggestion = suggestion;
         }
 
+        public String getMessage() {
+            return message;
+        }
+
+        public int getLine() {
+            return line;
+        }
+
+        public int getColumn() {
+            return column;
+        }
+
+        public String getSuggestion() {
+            return suggestion;
+        }
+
         @Override
         public String toString() {
             return String.format("Syntax Error at line %d, column %d: %s\nSuggestion: %s",
@@ -52,6 +68,9 @@ public class SyntaxErrorHandler {
             System.err.println("Maximum error limit reached. Further errors will be ignored.");
             return; // Prevent excessive memory usage
         }
+        if (ParseTrace.ENABLED) {
+            ParseTrace.record(ParseTrace.Event.ERROR, null, line, column);
+        }
         errors.add(new SyntaxError(message, line, column, suggestion));
     }
 